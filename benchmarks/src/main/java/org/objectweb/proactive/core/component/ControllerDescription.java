@@ -0,0 +1,50 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.core.component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.objectweb.proactive.core.component.control.StandInController;
+
+/**
+ * Stand-in for the ProActive controller description. Every configuration
+ * declares the same controllers, implemented by {@link StandInController}.
+ *
+ * @author bsauvan
+ */
+public class ControllerDescription {
+
+    public static final int CONTROLLERS_COUNT = 8;
+
+    public ControllerDescription(String name, String hierarchicalType,
+            String controllersConfigFileLocation) {
+    }
+
+    public Map<String, String> getControllersSignatures() {
+        Map<String, String> signatures = new LinkedHashMap<String, String>();
+
+        for (int i = 0; i < CONTROLLERS_COUNT; i++) {
+            signatures.put(
+                    StandInController.class.getName() + "$Itf" + i,
+                    StandInController.class.getName());
+        }
+
+        return signatures;
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.core.component.gen;
+
+import java.util.Collections;
+
+import org.objectweb.proactive.mavenplugin.SyntheticClassWriter;
+
+/**
+ * Stand-in for the ProActive component generation utilities, with the naming
+ * scheme of the meta objects and representatives and a class generation
+ * writing synthetic classes.
+ *
+ * @author bsauvan
+ */
+public class Utils {
+
+    public static final String GENERATED_DEFAULT_PREFIX = "generated.";
+
+    public static String getMetaObjectClassName(String functionalInterfaceName,
+                                                String javaInterfaceName) {
+        return GENERATED_DEFAULT_PREFIX + javaInterfaceName + "_"
+                + escape(functionalInterfaceName) + "_MetaObject";
+    }
+
+    public static String getMetaObjectComponentRepresentativeClassName(String functionalInterfaceName,
+                                                                       String javaInterfaceName) {
+        return GENERATED_DEFAULT_PREFIX + javaInterfaceName + "_"
+                + escape(functionalInterfaceName) + "_Representative";
+    }
+
+    public static byte[] getClassData(String className) {
+        return SyntheticClassWriter.writeInterface(
+                className, Collections.<String> emptyList(), 4);
+    }
+
+    private static String escape(String name) {
+        return name.replace('-', '_').replace('.', '_');
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.core.mop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.objectweb.proactive.mavenplugin.ClassFileHeader;
+import org.objectweb.proactive.mavenplugin.SyntheticClassWriter;
+import org.objectweb.proactive.mavenplugin.Util;
+
+/**
+ * Stand-in for the ProActive stub builder. Like the real builder, it reads the
+ * bytecode of the object class through the context class loader, then it
+ * writes a stub implementing the object class.
+ *
+ * @author lpellegr
+ */
+public class JavassistByteCodeStubBuilder {
+
+    public static byte[] create(String className, Class<?>[] genericParameters)
+            throws IOException {
+        InputStream in =
+                Thread.currentThread().getContextClassLoader().getResourceAsStream(
+                        className.replace('.', '/') + ".class");
+        if (in == null) {
+            throw new IOException("Cannot find " + className);
+        }
+
+        byte[] bytecode;
+        try {
+            bytecode = Util.readFully(in);
+        } finally {
+            in.close();
+        }
+
+        ClassFileHeader header = ClassFileHeader.parse(bytecode, true);
+
+        return SyntheticClassWriter.writeInterface(
+                Utils.convertClassNameToStubClassName(
+                        header.getClassName(), null),
+                Collections.singletonList(className), 0);
+    }
+
+}
@@ -0,0 +1,53 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.core.mop;
+
+/**
+ * Stand-in for the ProActive class of the same name, providing the stub
+ * naming scheme used by the stubs goal so that the benchmarks run without
+ * ProActive.
+ *
+ * @author lpellegr
+ */
+public class Utils {
+
+    public static final String STUB_DEFAULT_PREFIX = "_Stub";
+
+    public static final String STUB_DEFAULT_PACKAGE = "pa.stub.";
+
+    public static String convertClassNameToStubClassName(String classname,
+                                                         Class<?>[] genericParameters) {
+        int index = classname.lastIndexOf('.');
+
+        if (index < 0) {
+            return STUB_DEFAULT_PACKAGE + STUB_DEFAULT_PREFIX + classname;
+        }
+
+        return STUB_DEFAULT_PACKAGE + classname.substring(0, index + 1)
+                + STUB_DEFAULT_PREFIX + classname.substring(index + 1);
+    }
+
+    public static String convertStubClassNameToClassName(String stubClassName) {
+        String className =
+                stubClassName.substring(STUB_DEFAULT_PACKAGE.length());
+        int index = className.lastIndexOf('.');
+
+        return className.substring(0, index + 1)
+                + className.substring(index + 1 + STUB_DEFAULT_PREFIX.length());
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the creation of the project class loader, followed by the lookup
+ * of a ProActive class as done by the mojos before any generation.
+ *
+ * @author lpellegr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassLoaderBenchmark {
+
+    @Param({"100", "1000"})
+    public int classesCount;
+
+    private SyntheticProject project;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.project = SyntheticProject.create(this.classesCount, 0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.project.delete();
+    }
+
+    @Benchmark
+    public Class<?> createClassLoader() throws Exception {
+        URLClassLoader classLoader =
+                Util.createClassLoader(this.project.getClasspathElements());
+        try {
+            return classLoader.loadClass(this.project.getClassNames().get(0));
+        } finally {
+            classLoader.close();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the discovery of the classes to generate: stub names computed from
+ * explicit includes or from a package pattern matched against the scanned
+ * classes, and meta object names extracted from the ADL files.
+ *
+ * @author lpellegr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassNamesBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int classesCount;
+
+    @Param({"100", "1000"})
+    public int adlCount;
+
+    private SyntheticProject project;
+
+    private StubsMojo explicitStubsMojo;
+
+    private StubsMojo patternStubsMojo;
+
+    private GcmMojo gcmMojo;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.project = SyntheticProject.create(this.classesCount, this.adlCount);
+        File outputDirectory = this.project.getClassesDirectory();
+
+        this.explicitStubsMojo =
+                this.project.createStubsMojo(outputDirectory, false);
+        this.explicitStubsMojo.init();
+        this.patternStubsMojo =
+                this.project.createStubsMojo(outputDirectory, true);
+        this.patternStubsMojo.init();
+        this.gcmMojo = this.project.createGcmMojo(outputDirectory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.project.delete();
+    }
+
+    @Benchmark
+    public List<String> stubsFromIncludes() throws Exception {
+        return this.explicitStubsMojo.getClassNames();
+    }
+
+    @Benchmark
+    public List<String> stubsFromPattern() throws Exception {
+        return this.patternStubsMojo.getClassNames();
+    }
+
+    @Benchmark
+    public List<String> gcm() throws Exception {
+        // init resets the class names collected by the previous invocation
+        this.gcmMojo.init();
+        return this.gcmMojo.getClassNames();
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the generation of a single class through the generators of the
+ * mojos, that is the cost of the plugin around the ProActive generators,
+ * which are replaced by stand-ins.
+ *
+ * @author lpellegr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GenerateClassBenchmark {
+
+    @Param({"1000"})
+    public int classesCount;
+
+    private SyntheticProject project;
+
+    private ClassGenerator stubGenerator;
+
+    private List<String> stubClassNames;
+
+    private ClassGenerator gcmGenerator;
+
+    private List<String> gcmClassNames;
+
+    private int index;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.project =
+                SyntheticProject.create(this.classesCount, this.classesCount / 2);
+
+        StubsMojo stubsMojo =
+                this.project.createStubsMojo(
+                        this.project.getClassesDirectory(), false);
+        stubsMojo.init();
+        this.stubClassNames = stubsMojo.getClassNames();
+        this.stubGenerator = stubsMojo.createGenerator(stubsMojo.classLoader);
+
+        GcmMojo gcmMojo =
+                this.project.createGcmMojo(this.project.getClassesDirectory());
+        gcmMojo.init();
+        this.gcmClassNames = gcmMojo.getClassNames();
+        this.gcmGenerator = gcmMojo.createGenerator(gcmMojo.classLoader);
+
+        // the stub builder reads the object classes from the context class
+        // loader, as set by the mojos
+        Thread.currentThread().setContextClassLoader(stubsMojo.classLoader);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.project.delete();
+    }
+
+    @Benchmark
+    public byte[] stub() throws Exception {
+        this.index = (this.index + 1) % this.stubClassNames.size();
+        return this.stubGenerator.generateClass(this.stubClassNames.get(this.index));
+    }
+
+    @Benchmark
+    public byte[] gcm() throws Exception {
+        this.index = (this.index + 1) % this.gcmClassNames.size();
+        return this.gcmGenerator.generateClass(this.gcmClassNames.get(this.index));
+    }
+
+}
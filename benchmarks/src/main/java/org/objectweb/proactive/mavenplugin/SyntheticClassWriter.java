@@ -0,0 +1,119 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the bytecode of synthetic public interfaces declaring a given
+ * number of abstract methods, used as source classes by the benchmarks.
+ *
+ * @author lpellegr
+ */
+public class SyntheticClassWriter {
+
+    private static final int CONSTANT_UTF8 = 1;
+
+    private static final int CONSTANT_CLASS = 7;
+
+    private static final int ACC_INTERFACE_FLAGS = 0x0601;
+
+    private static final int ACC_ABSTRACT_METHOD_FLAGS = 0x0401;
+
+    private static final String METHOD_DESCRIPTOR =
+            "(Ljava/lang/String;)Ljava/lang/Object;";
+
+    private SyntheticClassWriter() {
+    }
+
+    public static byte[] writeInterface(String className,
+                                        List<String> interfaceNames,
+                                        int methodsCount) {
+        List<String> utf8Constants = new ArrayList<String>();
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            // this class, super class and interfaces are pairs of a utf8
+            // constant and a class constant
+            List<String> classNames = new ArrayList<String>();
+            classNames.add(className);
+            classNames.add("java.lang.Object");
+            classNames.addAll(interfaceNames);
+            for (String name : classNames) {
+                utf8Constants.add(name.replace('.', '/'));
+            }
+            int methodNamesIndex = 2 * classNames.size() + 1;
+            for (int i = 0; i < methodsCount; i++) {
+                utf8Constants.add("m" + i);
+            }
+            int descriptorIndex = methodNamesIndex + methodsCount;
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            // Java 7
+            out.writeShort(51);
+
+            out.writeShort(descriptorIndex + 1);
+            for (int i = 0; i < classNames.size(); i++) {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(utf8Constants.get(i));
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(2 * i + 1);
+            }
+            for (int i = 0; i < methodsCount; i++) {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(utf8Constants.get(classNames.size() + i));
+            }
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(METHOD_DESCRIPTOR);
+
+            out.writeShort(ACC_INTERFACE_FLAGS);
+            out.writeShort(2);
+            out.writeShort(4);
+            out.writeShort(interfaceNames.size());
+            for (int i = 0; i < interfaceNames.size(); i++) {
+                out.writeShort(2 * (i + 2) + 2);
+            }
+
+            // fields
+            out.writeShort(0);
+
+            out.writeShort(methodsCount);
+            for (int i = 0; i < methodsCount; i++) {
+                out.writeShort(ACC_ABSTRACT_METHOD_FLAGS);
+                out.writeShort(methodNamesIndex + i);
+                out.writeShort(descriptorIndex);
+                out.writeShort(0);
+            }
+
+            // attributes
+            out.writeShort(0);
+            out.close();
+
+            return bytes.toByteArray();
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+}
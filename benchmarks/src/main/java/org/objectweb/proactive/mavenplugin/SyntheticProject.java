@@ -0,0 +1,267 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.objectweb.proactive.core.mop.Utils;
+
+/**
+ * A synthetic module used by the benchmarks: a classes directory containing a
+ * given number of remote interfaces and ADL files, compiled against the local
+ * stand-ins of the ProActive classes.
+ *
+ * @author lpellegr
+ */
+public class SyntheticProject {
+
+    public static final String PACKAGE_PREFIX = "bench.p";
+
+    private static final String BASE_INTERFACE_NAME = "bench.Service";
+
+    private static final String CONTROLLERS_CONFIGURATION = "bench/controllers.xml";
+
+    // number of packages the classes are spread over
+    private static final int PACKAGES_COUNT = 32;
+
+    private static final int METHODS_COUNT = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File baseDirectory;
+
+    private final File classesDirectory;
+
+    private final List<String> classNames;
+
+    private final List<String> classpathElements;
+
+    private SyntheticProject(File baseDirectory, List<String> classNames)
+            throws IOException {
+        this.baseDirectory = baseDirectory;
+        this.classesDirectory = new File(baseDirectory, "classes");
+        this.classNames = Collections.unmodifiableList(classNames);
+        this.classpathElements =
+                Collections.unmodifiableList(Arrays.asList(
+                        this.classesDirectory.getPath(),
+                        getStandInsLocation().getPath()));
+    }
+
+    /**
+     * Creates a project with the specified number of classes and of ADL files,
+     * each ADL file declaring two interfaces.
+     */
+    public static SyntheticProject create(int classesCount, int adlCount)
+            throws IOException {
+        List<String> classNames = new ArrayList<String>(classesCount);
+        for (int i = 0; i < classesCount; i++) {
+            classNames.add(PACKAGE_PREFIX + (i % PACKAGES_COUNT) + ".Service"
+                    + i);
+        }
+
+        SyntheticProject project =
+                new SyntheticProject(Files.createTempDirectory(
+                        "proactive-benchmark").toFile(), classNames);
+
+        project.writeClass(BASE_INTERFACE_NAME, SyntheticClassWriter.writeInterface(
+                BASE_INTERFACE_NAME, Collections.<String> emptyList(), 1));
+        for (String className : classNames) {
+            project.writeClass(className, SyntheticClassWriter.writeInterface(
+                    className,
+                    Collections.singletonList(BASE_INTERFACE_NAME),
+                    METHODS_COUNT));
+        }
+
+        project.writeFile(
+                CONTROLLERS_CONFIGURATION,
+                "<componentConfiguration name=\"bench\"/>\n");
+        for (int i = 0; i < adlCount; i++) {
+            project.writeFile("bench/adl/Component" + i + ".fractal",
+                    project.createAdl(i));
+        }
+
+        return project;
+    }
+
+    private String createAdl(int index) {
+        StringBuilder adl = new StringBuilder();
+        adl.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        adl.append("<definition name=\"bench.adl.Component").append(index).append("\">\n");
+
+        for (int i = 0; i < 2; i++) {
+            String signature =
+                    this.classNames.get((2 * index + i) % this.classNames.size());
+            adl.append("  <interface name=\"service-").append(i).append(
+                    "\" role=\"server\" signature=\"").append(signature).append(
+                    "\"/>\n");
+        }
+        adl.append("  <content class=\"bench.Impl\">\n");
+        adl.append("    <attributes signature=\"bench.Attributes\">\n");
+        adl.append("      <attribute name=\"index\" value=\"").append(index).append("\"/>\n");
+        adl.append("    </attributes>\n");
+        adl.append("  </content>\n");
+
+        // one component out of ten uses a custom controller configuration
+        String desc = index % 10 == 0 ? CONTROLLERS_CONFIGURATION : "primitive";
+        adl.append("  <controller desc=\"").append(desc).append("\"/>\n");
+        adl.append("</definition>\n");
+
+        return adl.toString();
+    }
+
+    private void writeClass(String className, byte[] bytecode)
+            throws IOException {
+        this.write(ClasspathIndex.toResourceName(className), bytecode);
+    }
+
+    private void writeFile(String resourceName, String content)
+            throws IOException {
+        this.write(resourceName, content.getBytes(UTF_8));
+    }
+
+    private void write(String resourceName, byte[] data) throws IOException {
+        File file = new File(this.classesDirectory, resourceName);
+        file.getParentFile().mkdirs();
+
+        OutputStream out = Files.newOutputStream(file.toPath());
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    public File getClassesDirectory() {
+        return this.classesDirectory;
+    }
+
+    public List<String> getClassNames() {
+        return this.classNames;
+    }
+
+    public List<String> getClasspathElements() {
+        return this.classpathElements;
+    }
+
+    /**
+     * Creates a stubs mojo configured for this project, selecting the classes
+     * either by their names or by a package pattern.
+     */
+    public StubsMojo createStubsMojo(File outputDirectory, boolean patterns)
+            throws Exception {
+        StubsMojo mojo = new StubsMojo();
+        this.configure(mojo, outputDirectory);
+
+        if (patterns) {
+            setField(mojo, "includes", Collections.singletonList("bench.**"));
+        } else {
+            setField(mojo, "includes", new ArrayList<String>(this.classNames));
+        }
+
+        return mojo;
+    }
+
+    public GcmMojo createGcmMojo(File outputDirectory) throws Exception {
+        GcmMojo mojo = new GcmMojo();
+        this.configure(mojo, outputDirectory);
+        setField(mojo, "classesDirectory", this.classesDirectory);
+
+        return mojo;
+    }
+
+    private void configure(AbstractClassGeneratorMojo mojo,
+                           File outputDirectory) throws IOException {
+        mojo.setLog(new DefaultLog(new ConsoleLogger(
+                Logger.LEVEL_ERROR, "benchmark")));
+        mojo.outputDirectory = outputDirectory;
+        mojo.projectClasspathElements = this.classpathElements;
+        mojo.classLoader = Util.createClassLoader(this.classpathElements);
+        mojo.classpathDigest = ClassLoaderCache.digest(this.classpathElements);
+        mojo.classpathIndex = ClasspathIndex.build(this.classpathElements);
+    }
+
+    public void delete() throws IOException {
+        delete(this.baseDirectory);
+    }
+
+    public static void delete(File directory) throws IOException {
+        if (!directory.exists()) {
+            return;
+        }
+
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                                             BasicFileAttributes attributes)
+                    throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e)
+                    throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static File getStandInsLocation() {
+        try {
+            return new File(Utils.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void setField(Object target, String name, Object value)
+            throws Exception {
+        Class<?> clazz = target.getClass();
+
+        while (clazz != null) {
+            try {
+                Field field = clazz.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                clazz = clazz.getSuperclass();
+            }
+        }
+
+        throw new NoSuchFieldException(name);
+    }
+
+}
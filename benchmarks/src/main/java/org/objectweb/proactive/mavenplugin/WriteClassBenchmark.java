@@ -0,0 +1,123 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the write of a generated class into the output directory, either
+ * with a new content each time or with the content already written, in which
+ * case the file is left untouched.
+ *
+ * @author lpellegr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriteClassBenchmark {
+
+    @Param({"1000"})
+    public int classesCount;
+
+    @Param({"true", "false"})
+    public boolean unchanged;
+
+    private File outputDirectory;
+
+    private StubsMojo mojo;
+
+    private List<String> classNames;
+
+    private List<byte[][]> contents;
+
+    /**
+     * Index of the content last written for each class.
+     */
+    private int[] writtenContents;
+
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.outputDirectory =
+                Files.createTempDirectory("proactive-benchmark").toFile();
+        this.mojo = new StubsMojo();
+        this.classNames = new ArrayList<String>(this.classesCount);
+        this.contents = new ArrayList<byte[][]>(this.classesCount);
+        this.writtenContents = new int[this.classesCount];
+
+        for (int i = 0; i < this.classesCount; i++) {
+            String className =
+                    "pa.stub." + SyntheticProject.PACKAGE_PREFIX + (i % 32)
+                            + "._StubService" + i;
+            this.classNames.add(className);
+
+            // two contents of the same size differing by one method name
+            this.contents.add(new byte[][] {
+                    SyntheticClassWriter.writeInterface(
+                            className, Collections.<String> emptyList(), 4),
+                    SyntheticClassWriter.writeInterface(
+                            className.substring(0, className.length() - 1)
+                                    + "_", Collections.<String> emptyList(), 4)});
+            this.mojo.writeClass(
+                    this.outputDirectory, className, this.contents.get(i)[0]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticProject.delete(this.outputDirectory);
+    }
+
+    @Benchmark
+    public String writeClass() throws IOException {
+        this.index = (this.index + 1) % this.classesCount;
+
+        int content = this.writtenContents[this.index];
+        if (!this.unchanged) {
+            content = 1 - content;
+            this.writtenContents[this.index] = content;
+        }
+
+        return this.mojo.writeClass(
+                this.outputDirectory, this.classNames.get(this.index),
+                this.contents.get(this.index)[content]);
+    }
+
+}
@@ -17,18 +17,39 @@
 package org.objectweb.proactive.mavenplugin;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
 
 /**
  * This class is used to provide the operations which are common to all the
  * ProActive class generations.
+ * <p>
+ * The mojos can be executed concurrently by the modules of a parallel build:
+ * the state of an execution is held by the mojo instance, which Maven creates
+ * per execution, the state shared between executions is synchronized, and
+ * the generators of ProActive, which keep static state, are never used by two
+ * executions at a time (see {@link ClassLoaderCache}).
  * 
  * @phase compile
  * @requiresDependencyResolution compile+runtime
@@ -38,6 +59,25 @@ import org.apache.maven.plugin.MojoFailureException;
  */
 public abstract class AbstractClassGeneratorMojo extends AbstractMojo {
 
+    private static final String PREPARE_PHASE = "prepare";
+
+    private static final String CLASSLOADER_PHASE = "classloader";
+
+    private static final String INIT_PHASE = "init";
+
+    private static final String DISCOVERY_PHASE = "discovery";
+
+    private static final String PROBE_PHASE = "probe";
+
+    private static final String GENERATE_PHASE = "generate";
+
+    private static final String WRITE_PHASE = "write";
+
+    private static final List<String> PHASES =
+            Arrays.asList(
+                    PREPARE_PHASE, CLASSLOADER_PHASE, INIT_PHASE,
+                    DISCOVERY_PHASE, PROBE_PHASE, GENERATE_PHASE, WRITE_PHASE);
+
     /**
      * Compile classpath of the maven project.
      * 
@@ -53,77 +93,1596 @@ public abstract class AbstractClassGeneratorMojo extends AbstractMojo {
      */
     protected File outputDirectory;
 
+    /**
+     * Number of threads used to generate the classes. Each thread works with
+     * its own class loader in order to isolate the non thread-safe state of
+     * the ProActive generators.
+     * 
+     * @parameter expression="${proactive.threads}" default-value="1"
+     */
+    protected int threads;
+
+    /**
+     * Number of threads used to discover the classes to generate, by parsing
+     * the ADL files or scanning the compiled classes. Discovery does not use
+     * the ProActive generators, hence it defaults to the number of available
+     * processors if it is 0, whatever {@link #threads} is.
+     * 
+     * @parameter expression="${proactive.discoveryThreads}" default-value="0"
+     */
+    protected int discoveryThreads;
+
+    /**
+     * Indicates whether the generated classes are packaged into a jar attached
+     * to the project, instead of being written into the output directory.
+     * 
+     * @parameter expression="${proactive.outputJar}" default-value="false"
+     */
+    protected boolean outputJar;
+
+    /**
+     * Classifier of the jar containing the generated classes, when
+     * {@code outputJar} is enabled. Defaults to {@code proactive-<goal>}.
+     * 
+     * @parameter expression="${proactive.jarClassifier}"
+     */
+    protected String jarClassifier;
+
+    /**
+     * @parameter default-value="${project.build.directory}"
+     * @readonly
+     */
+    protected File buildDirectory;
+
+    /**
+     * @parameter default-value="${project.build.finalName}"
+     * @readonly
+     */
+    protected String finalName;
+
+    /**
+     * Directory where the plugin keeps the state used by incremental builds.
+     * 
+     * @parameter default-value="${project.build.directory}/proactive-maven-plugin"
+     * @readonly
+     */
+    protected File workDirectory;
+
+    /**
+     * Indicates whether the class loaders over the dependencies of the module
+     * are shared with the other executions of the build depending on exactly
+     * the same jars. A shared class loader is discarded once the classes of
+     * the module it has loaded change. It can be disabled
+     * if the ProActive version in use does not resolve the classes of the
+     * module through the context class loader.
+     * 
+     * @parameter expression="${proactive.shareClassLoaders}" default-value="true"
+     */
+    protected boolean shareClassLoaders;
+
+    /**
+     * Indicates whether the generated classes are shared with the other builds
+     * of the machine through a cache located in the local repository.
+     * 
+     * @parameter expression="${proactive.useLocalCache}" default-value="false"
+     */
+    protected boolean useLocalCache;
+
+    /**
+     * Maximum size of the local cache of generated classes, in megabytes.
+     * 
+     * @parameter expression="${proactive.localCacheSize}" default-value="256"
+     */
+    protected int localCacheSize;
+
+    /**
+     * Number of the slowest classes to generate listed in the report written
+     * into the work directory.
+     * 
+     * @parameter expression="${proactive.slowestClasses}" default-value="10"
+     */
+    protected int slowestClasses;
+
+    /**
+     * Generates the classes with a daemon shared by the builds of the current
+     * user, which keeps the class loaders over the project jars warm. The
+     * classes are generated in process if the daemon is not available.
+     * 
+     * @parameter expression="${proactive.daemon}" default-value="false"
+     */
+    protected boolean daemon;
+
+    /**
+     * Number of minutes after which an idle daemon exits.
+     * 
+     * @parameter expression="${proactive.daemonIdleTimeout}" default-value="180"
+     */
+    protected int daemonIdleTimeout;
+
+    /**
+     * JVM arguments of the daemon, separated by spaces.
+     * 
+     * @parameter expression="${proactive.daemonJvmArgs}"
+     */
+    protected String daemonJvmArgs;
+
+    /**
+     * Number of JVMs forked to generate the classes, each of them generating
+     * a contiguous share of the classes with a single thread. Classes are
+     * generated by the build JVM if it is 0. The daemon is not used when JVMs
+     * are forked.
+     * 
+     * @parameter expression="${proactive.forks}" default-value="0"
+     */
+    protected int forks;
+
+    /**
+     * JVM arguments of the forked JVMs, separated by spaces, for instance to
+     * set their heap size.
+     * 
+     * @parameter expression="${proactive.forkJvmArgs}"
+     */
+    protected String forkJvmArgs;
+
+    /**
+     * Number of classes generated by a generator before it is discarded along
+     * with its class loader, so that the state it retains, such as the
+     * Javassist class pools, is released. Generators are kept for the whole
+     * execution if it is 0. Recycling bounds the memory of the generators,
+     * not that of the generated classes: with {@link #outputJar}, they are
+     * held until the jar is written.
+     * 
+     * @parameter expression="${proactive.recycleInterval}" default-value="0"
+     */
+    protected int recycleInterval;
+
+    /**
+     * Percentage of the maximum heap size retained after a garbage collection
+     * above which the generators are discarded along with their class
+     * loaders. Disabled if it is 0.
+     * 
+     * @parameter expression="${proactive.recycleHeapThreshold}" default-value="0"
+     */
+    protected int recycleHeapThreshold;
+
+    /**
+     * Indicates whether an index of the generated classes by source class
+     * and the list of these classes, from which a class data sharing archive
+     * can be built, are written along with the classes, under
+     * {@code META-INF/proactive}.
+     * 
+     * @parameter expression="${proactive.startupIndex}" default-value="true"
+     */
+    protected boolean startupIndex;
+
+    /**
+     * Indicates whether a class data sharing archive of the generated classes
+     * and their sources is dumped next to the jar of the generated classes,
+     * which requires {@link #outputJar} and a JVM supporting application
+     * class data sharing. Since only classes loaded from jars are archived,
+     * the archive is dumped with the classpath made of the generated jar
+     * followed by the dependency jars, which the nodes using it must start
+     * with.
+     * 
+     * @parameter expression="${proactive.cdsArchive}" default-value="false"
+     */
+    protected boolean cdsArchive;
+
+    /**
+     * JVM arguments of the JVM dumping the class data sharing archive,
+     * separated by spaces.
+     * 
+     * @parameter expression="${proactive.cdsJvmArgs}"
+     */
+    protected String cdsJvmArgs;
+
+    /**
+     * Range of the ProActive Programming versions supported by the module, in
+     * the Maven version range syntax, for instance {@code [5.2,6.0)}. The
+     * build fails before any class loader is created if the version in use
+     * is not in the range or cannot be determined. Any version is accepted
+     * if it is not set.
+     * 
+     * @parameter expression="${proactive.versionRange}"
+     */
+    protected String proactiveVersionRange;
+
+    /**
+     * @parameter expression="${localRepository}"
+     * @readonly
+     * @required
+     */
+    protected ArtifactRepository localRepository;
+
+    /**
+     * @parameter expression="${session}"
+     * @readonly
+     * @required
+     */
+    protected MavenSession session;
+
+    /**
+     * @parameter expression="${project}"
+     * @readonly
+     * @required
+     */
+    protected MavenProject project;
+
+    /**
+     * @component
+     */
+    protected MavenProjectHelper projectHelper;
+
     protected URLClassLoader classLoader;
 
+    /**
+     * Digest of the jars on the classpath of {@link #classLoader}.
+     */
+    protected String classpathDigest;
+
+    protected ClasspathIndex classpathIndex;
+
+    /**
+     * Version of ProActive Programming, detected without loading it.
+     */
+    private String proactiveVersion;
+
+    private ClassOutput classOutput;
+
+    private Map<String, Future<ClassOutput.Result>> pendingWrites;
+
+    private DependencyIndex dependencyIndex;
+
+    /**
+     * Dependencies of the classes to generate.
+     */
+    private Map<String, List<String>> dependencies;
+
+    /**
+     * Current state of the types the generated classes depend on.
+     */
+    private Map<String, DependencyIndex.TypeState> typeStates;
+
+    private GeneratedClassCache localCache;
+
+    /**
+     * Keys of the outdated classes in the local cache.
+     */
+    private Map<String, String> localCacheKeys;
+
+    private final AtomicInteger localCacheHits = new AtomicInteger();
+
+    private GenerationMetrics metrics;
+
+    /**
+     * State of the classpath directories when the execution started, shared
+     * by the class loaders it acquires.
+     */
+    private ClassLoaderCache.DirectoryState directoryState;
+
+    /**
+     * Indicates whether the execution wrote or deleted classes, in which case
+     * the state of the classpath directories is taken again once it ends.
+     */
+    private boolean outputChanged;
+
+    /**
+     * Classes to generate, mapped to their source classes, when they are
+     * assigned by the aggregate goal instead of being discovered.
+     */
+    Map<String, List<String>> assignedClassNames;
+
+    /**
+     * Indicates whether the classpath index is kept from one execution to
+     * the next, as by the watch goal, so that only the directories and the
+     * changed jars are indexed again.
+     */
+    boolean retainClasspathIndex;
+
+    private ClasspathIndex retainedClasspathIndex;
+
+    /**
+     * Classes discovered by a module, mapped to their source classes, along
+     * with the ProActive version they would be generated with.
+     */
+    static class Targets {
+
+        private final String proactiveVersion;
+
+        private final Map<String, List<String>> sourceClassNames;
+
+        Targets(String proactiveVersion,
+                Map<String, List<String>> sourceClassNames) {
+            this.proactiveVersion = proactiveVersion;
+            this.sourceClassNames = sourceClassNames;
+        }
+
+        String getProActiveVersion() {
+            return this.proactiveVersion;
+        }
+
+        Map<String, List<String>> getSourceClassNames() {
+            return this.sourceClassNames;
+        }
+
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
-        this.classLoader =
-                Util.createClassLoader(this.projectClasspathElements);
+        this.metrics = new GenerationMetrics(PHASES, this.slowestClasses);
+        for (String counterName : Arrays.asList(
+                "classes", "upToDate", "generated", "unchanged", "failed",
+                "cacheHits")) {
+            this.metrics.add(counterName, 0);
+        }
+
+        GenerationMetrics.Timer timer = this.metrics.start();
+        try {
+            this.prepare();
+        } catch (MojoExecutionException mee) {
+            this.release();
+            throw mee;
+        }
+        this.metrics.record(PREPARE_PHASE, timer, 1);
+
+        timer = this.metrics.start();
+        ClassLoaderCache.beginExecution(this.session);
+        ClassLoaderCache.Lease lease;
+        try {
+            lease = this.acquireClassLoader();
+        } catch (IOException ioe) {
+            ClassLoaderCache.endExecution(this.session);
+            this.release();
+            throw new MojoExecutionException(
+                    "Failed to create the project class loader", ioe);
+        }
+
+        this.metrics.record(CLASSLOADER_PHASE, timer, 1);
+
+        // the build thread is used by the next modules of a parallel build
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+        try {
+            this.classLoader = lease.getClassLoader();
+            this.classpathDigest = lease.getDigest();
+            this.generate();
+        } finally {
+            currentThread.setContextClassLoader(contextClassLoader);
+            this.writeReport();
+
+            if (this.directoryState != null && this.outputChanged) {
+                try {
+                    this.directoryState.update();
+                } catch (IOException ioe) {
+                    this.getLog().warn(
+                            "Failed to digest the classpath directories", ioe);
+                }
+            }
+            try {
+                lease.close();
+            } catch (IOException ioe) {
+                this.getLog().warn("Failed to close the project class loader", ioe);
+            }
+            this.release();
+            ClassLoaderCache.endExecution(this.session);
+        }
+    }
+
+    /**
+     * Indexes the project classpath and detects the version of ProActive
+     * Programming, which is checked and published as the
+     * {@value ProActiveVersion#PROPERTY_NAME} project property, before any
+     * class loader is created.
+     */
+    private void prepare() throws MojoExecutionException {
+        try {
+            if (this.retainClasspathIndex
+                    && this.retainedClasspathIndex != null) {
+                this.classpathIndex = this.retainedClasspathIndex.refresh();
+            } else {
+                this.classpathIndex =
+                        ClasspathIndex.build(this.projectClasspathElements);
+            }
+            if (this.retainClasspathIndex) {
+                this.retainedClasspathIndex = this.classpathIndex;
+            }
+        } catch (IOException ioe) {
+            throw new MojoExecutionException(
+                    "Failed to index the project classpath", ioe);
+        }
+
+        try {
+            this.proactiveVersion =
+                    ProActiveVersion.detect(
+                            this.session, this.project, this.classpathIndex);
+        } catch (IOException ioe) {
+            throw new MojoExecutionException(
+                    "Failed to read the version of ProActive Programming", ioe);
+        }
+
+        if (this.proactiveVersion == null
+                && !this.classpathIndex.containsClass(ProActiveVersion.PAVERSION_CLASSNAME)) {
+            throw new MojoExecutionException(
+                    "ProActive Programming is not a dependency or a transitive dependency of the current module");
+        }
+        ProActiveVersion.checkCompatibility(
+                this.proactiveVersion, this.proactiveVersionRange);
 
+        if (this.proactiveVersion != null) {
+            this.project.getProperties().setProperty(
+                    ProActiveVersion.PROPERTY_NAME, this.proactiveVersion);
+        }
+    }
+
+    /**
+     * Acquires the class loader over the project classpath. The directories
+     * of the classpath are digested once for the execution, the class loaders
+     * of its generator threads included.
+     */
+    private ClassLoaderCache.Lease acquireClassLoader() throws IOException {
+        this.directoryState = null;
+        if (!this.shareClassLoaders) {
+            return ClassLoaderCache.createUnshared(this.projectClasspathElements);
+        }
+
+        this.directoryState =
+                new ClassLoaderCache.DirectoryState(this.projectClasspathElements);
+        this.outputChanged = false;
+
+        return ClassLoaderCache.acquire(
+                this.projectClasspathElements, this.directoryState);
+    }
+
+    /**
+     * Discovers the classes to generate without generating them.
+     */
+    Targets discover() throws MojoExecutionException {
+        try {
+            this.prepare();
+        } catch (MojoExecutionException mee) {
+            this.release();
+            throw mee;
+        }
+
+        ClassLoaderCache.beginExecution(this.session);
+        ClassLoaderCache.Lease lease;
+        try {
+            lease = this.acquireClassLoader();
+        } catch (IOException ioe) {
+            ClassLoaderCache.endExecution(this.session);
+            this.release();
+            throw new MojoExecutionException(
+                    "Failed to create the project class loader", ioe);
+        }
+
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+        try {
+            this.classLoader = lease.getClassLoader();
+            this.classpathDigest = lease.getDigest();
+            this.init();
+            currentThread.setContextClassLoader(this.classLoader);
+
+            Map<String, List<String>> sourceClassNames =
+                    new LinkedHashMap<String, List<String>>();
+            for (String className : this.getClassNames()) {
+                sourceClassNames.put(
+                        className, this.getSourceClassNames(className));
+            }
+
+            return new Targets(this.proactiveVersion, sourceClassNames);
+        } finally {
+            currentThread.setContextClassLoader(contextClassLoader);
+            try {
+                lease.close();
+            } catch (IOException ioe) {
+                this.getLog().warn("Failed to close the project class loader", ioe);
+            }
+            this.release();
+            ClassLoaderCache.endExecution(this.session);
+        }
+    }
+
+    private void generate() throws MojoExecutionException {
+        GenerationMetrics.Timer timer = this.metrics.start();
         this.init();
+        this.metrics.record(INIT_PHASE, timer, 1);
 
-        List<String> classNames = this.getClassNames();
+        timer = this.metrics.start();
+        List<String> classNames;
+        if (this.assignedClassNames != null) {
+            classNames = new ArrayList<String>(this.assignedClassNames.keySet());
+        } else {
+            classNames = this.getClassNames();
+        }
+        this.metrics.record(DISCOVERY_PHASE, timer, classNames.size());
+        this.metrics.add("classes", classNames.size());
         Thread.currentThread().setContextClassLoader(this.classLoader);
-        for (final String className : classNames) {
+
+        timer = this.metrics.start();
+
+        File jarFile = null;
+        if (this.outputJar) {
+            jarFile = this.getJarFile();
             try {
-                this.classLoader.loadClass(className);
-            } catch (ClassNotFoundException cnfe) {
-                try {
-                    byte[] data = this.generateClass(className);
+                this.classOutput = new JarClassOutput(jarFile);
+            } catch (IOException ioe) {
+                throw new MojoExecutionException("Failed to read " + jarFile, ioe);
+            }
+        } else {
+            // classes are written behind the generator threads, if any
+            this.classOutput =
+                    new ClassFileWriter(this.outputDirectory, this.threads > 1);
+        }
+        this.pendingWrites =
+                new LinkedHashMap<String, Future<ClassOutput.Result>>();
 
-                    String fileName =
-                            this.writeClass(
-                                    this.outputDirectory, className, data);
+        File indexFile = this.getIndexFile();
+        DependencyIndex previousIndex = DependencyIndex.load(indexFile);
+        String proactiveVersion = this.proactiveVersion;
+        this.dependencyIndex = new DependencyIndex(proactiveVersion);
+        this.dependencies = new HashMap<String, List<String>>();
+        this.typeStates = new HashMap<String, DependencyIndex.TypeState>();
 
-                    this.getLog().info(
-                            "Generated " + this.getKind() + " " + fileName);
-                } catch (Exception e) {
-                    this.getLog().error(
-                            "Failed to generate " + this.getKind() + " "
-                                    + className, e);
+        // classes depending on a type changed since the previous build
+        Set<String> affectedClassNames;
+        if (proactiveVersion == null
+                || !proactiveVersion.equals(previousIndex.getProActiveVersion())) {
+            affectedClassNames = previousIndex.getClassNames();
+        } else {
+            affectedClassNames =
+                    previousIndex.getDependents(this.getChangedTypes(previousIndex));
+        }
+
+        List<String> outdatedClassNames = new ArrayList<String>();
+        for (final String className : classNames) {
+            if (this.isUpToDate(className, previousIndex, affectedClassNames)) {
+                this.metrics.increment("upToDate");
+                continue;
+            }
+
+            // assigned classes are generated even if a dependency provides
+            // them, since its copy is deleted by the aggregate goal
+            if (this.assignedClassNames == null
+                    && !previousIndex.contains(className)
+                    && !this.classOutput.contains(className)) {
+                // the class may be provided by a dependency
+                if (this.classpathIndex.containsClass(className)) {
+                    continue;
                 }
             }
-        }
-    }
 
-    protected abstract void init() throws MojoExecutionException;
+            outdatedClassNames.add(className);
+        }
 
-    protected abstract List<String> getClassNames()
-            throws MojoExecutionException;
+        if (this.getLog().isDebugEnabled()) {
+            this.getLog().debug(
+                    outdatedClassNames.size() + " " + this.getKind()
+                            + "(s) to generate, " + affectedClassNames.size()
+                            + " affected by changed types");
+        }
 
-    protected abstract byte[] generateClass(String className) throws Exception;
+        this.computeDependencies(outdatedClassNames, previousIndex);
+        this.deleteStaleClasses(previousIndex, classNames);
 
-    public String writeClass(File outputDirectory, String className, byte[] data)
-            throws IOException {
-        // writes the bytecode into a file
-        String fileName =
-                new File(outputDirectory.toString(), className.replace(
-                        '.', File.separatorChar)
-                        + ".class").toString();
-        FileOutputStream fos = null;
+        if (this.useLocalCache) {
+            this.initLocalCache(outdatedClassNames, proactiveVersion);
+        }
+        this.metrics.record(PROBE_PHASE, timer, classNames.size());
 
+        GenerationMetrics.Phase writePhase =
+                this.metrics.getPhase(WRITE_PHASE);
+        long writeTime = writePhase.getWallTime();
+        timer = this.metrics.start();
         try {
-            new File(fileName.substring(
-                    0, fileName.lastIndexOf(File.separatorChar))).mkdirs();
+            List<String> classNamesToGenerate = outdatedClassNames;
+            if ((this.forks > 0 || this.daemon)
+                    && !outdatedClassNames.isEmpty()) {
+                classNamesToGenerate =
+                        this.resolveFromLocalCache(outdatedClassNames);
+                if (this.forks > 0) {
+                    classNamesToGenerate =
+                            this.generateWithForks(classNamesToGenerate);
+                } else {
+                    classNamesToGenerate =
+                            this.generateWithDaemon(classNamesToGenerate);
+                }
+            }
 
-            // dumps the bytecode into the file
-            fos = new FileOutputStream(new File(fileName));
-            fos.write(data);
-            fos.flush();
+            if (this.recycleInterval > 0 || this.recycleHeapThreshold > 0) {
+                this.generateWithRecycling(classNamesToGenerate);
+            } else if (this.threads > 1 && classNamesToGenerate.size() > 1) {
+                this.generateConcurrently(
+                        classNamesToGenerate, this.shareClassLoaders, null);
+            } else {
+                this.generateSerially(classNamesToGenerate, this.classLoader, null);
+            }
+
+            if (this.startupIndex) {
+                // the artifacts list the classes of the output, hence the
+                // pending writes must be completed first
+                GenerationMetrics.Timer writeTimer = this.metrics.start();
+                this.processWrites(true);
+                this.writeStartupArtifacts(classNames);
+                this.metrics.record(WRITE_PHASE, writeTimer, 0);
+            }
         } finally {
+            // the CPU time and allocations of the generation are measured
+            // per class, by the generating threads, whereas its wall time
+            // excludes the writes performed meanwhile
+            timer.stop();
+            this.metrics.getPhase(GENERATE_PHASE).add(
+                    timer.getWallTime()
+                            - (writePhase.getWallTime() - writeTime), 0, 0, 0);
+
+            timer = this.metrics.start();
             try {
-                fos.close();
+                this.classOutput.close();
             } catch (IOException ioe) {
-                this.getLog().error("Failed to close " + fileName, ioe);
+                throw new MojoExecutionException(
+                        "Failed to write the generated classes", ioe);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } finally {
+                this.processWrites(true);
+                this.metrics.record(WRITE_PHASE, timer, 0);
+                this.closeLocalCache();
             }
         }
 
-        return fileName;
-    }
+        if (jarFile != null && jarFile.isFile()) {
+            this.projectHelper.attachArtifact(
+                    this.project, "jar", this.getJarClassifier(), jarFile);
+        }
 
-    protected abstract String getKind();
+        if (this.cdsArchive) {
+            this.dumpArchive(jarFile);
+        }
+
+        try {
+            this.dependencyIndex.save(indexFile);
+        } catch (IOException ioe) {
+            this.getLog().warn("Failed to save " + indexFile, ioe);
+        }
+    }
+
+    /**
+     * Returns the types recorded by the previous build which changed since
+     * then. The current state of these types is kept for the current build.
+     */
+    private Set<String> getChangedTypes(DependencyIndex previousIndex) {
+        Set<String> changedTypeNames = new HashSet<String>();
+
+        for (String typeName : previousIndex.getTypeNames()) {
+            DependencyIndex.TypeState previousState =
+                    previousIndex.getTypeState(typeName);
+            DependencyIndex.TypeState currentState;
+            try {
+                currentState = this.getTypeState(typeName, previousState);
+            } catch (IOException ioe) {
+                changedTypeNames.add(typeName);
+                continue;
+            }
+
+            if (previousState == null || currentState == null) {
+                if (previousState != currentState) {
+                    changedTypeNames.add(typeName);
+                }
+            } else if (previousState.getHash() != currentState.getHash()) {
+                changedTypeNames.add(typeName);
+            }
+        }
+
+        return changedTypeNames;
+    }
+
+    private DependencyIndex.TypeState getTypeState(String typeName,
+                                                   DependencyIndex.TypeState previousState)
+            throws IOException {
+        if (this.typeStates.containsKey(typeName)) {
+            return this.typeStates.get(typeName);
+        }
+
+        DependencyIndex.TypeState typeState =
+                DependencyIndex.computeTypeState(
+                        this.classpathIndex, this.classLoader, typeName,
+                        previousState);
+        this.typeStates.put(typeName, typeState);
+
+        return typeState;
+    }
+
+    /**
+     * Indicates whether the specified class has been generated by a previous
+     * build and none of the types it depends on changed since then. An up to
+     * date class is recorded for the current build as a side effect.
+     */
+    private boolean isUpToDate(String className,
+                               DependencyIndex previousIndex,
+                               Set<String> affectedClassNames) {
+        List<String> previousDependencies =
+                previousIndex.getDependencies(className);
+
+        if (previousDependencies == null
+                || affectedClassNames.contains(className)
+                || !this.classOutput.contains(className)
+                || !previousDependencies.containsAll(this.getSources(className))) {
+            return false;
+        }
+
+        this.dependencyIndex.put(
+                className, previousDependencies, this.typeStates);
+        return true;
+    }
+
+    /**
+     * Computes the dependencies of the classes to generate, and the state of
+     * these dependencies, before the generation modifies the output.
+     */
+    private void computeDependencies(List<String> classNames,
+                                     DependencyIndex previousIndex) {
+        for (String className : classNames) {
+            try {
+                List<String> classDependencies =
+                        DependencyIndex.computeDependencies(
+                                this.classLoader,
+                                this.getSources(className));
+                if (classDependencies == null) {
+                    continue;
+                }
+
+                for (String typeName : classDependencies) {
+                    this.getTypeState(
+                            typeName, previousIndex.getTypeState(typeName));
+                }
+                this.dependencies.put(className, classDependencies);
+            } catch (IOException ioe) {
+                if (this.getLog().isDebugEnabled()) {
+                    this.getLog().debug(
+                            "Cannot compute the dependencies of " + className,
+                            ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the report of the execution into the work directory and logs a
+     * summary of it.
+     */
+    private void writeReport() {
+        File reportFile =
+                new File(this.workDirectory, this.getGoal() + "-report.json");
+
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("goal", this.getGoal());
+        properties.put("kind", this.getKind());
+        if (this.project != null) {
+            properties.put("project", this.project.getGroupId() + ":"
+                    + this.project.getArtifactId());
+        }
+        properties.put("threads", this.threads);
+
+        try {
+            this.metrics.writeReport(reportFile, properties);
+        } catch (IOException ioe) {
+            this.getLog().warn("Failed to write " + reportFile, ioe);
+        }
+
+        this.getLog().info(
+                this.getKind() + " generation: " + this.metrics.getSummary()
+                        + " - report: " + reportFile);
+    }
+
+    /**
+     * Deletes the classes generated by a previous build which no longer have
+     * a source.
+     */
+    private void deleteStaleClasses(DependencyIndex previousIndex,
+                                    List<String> classNames) {
+        for (String className : previousIndex.getStaleClassNames(classNames)) {
+            try {
+                String location = this.classOutput.delete(className);
+                if (location != null) {
+                    this.outputChanged = true;
+                    this.getLog().info(
+                            "Deleted stale " + this.getKind() + " " + location);
+                }
+            } catch (IOException ioe) {
+                this.getLog().warn(
+                        "Failed to delete stale " + this.getKind() + " "
+                                + className, ioe);
+            }
+        }
+    }
+
+    /**
+     * Computes the keys of the classes to generate in the local cache, in the
+     * current thread since the generator threads may not have access to the
+     * source classes. The keys cover the dependencies computed beforehand.
+     */
+    private void initLocalCache(List<String> classNames,
+                                String proactiveVersion) {
+        File directory =
+                new File(this.localRepository.getBasedir(),
+                        ".cache/proactive-maven-plugin/" + this.getGoal());
+        this.localCache =
+                new GeneratedClassCache(
+                        directory, this.localCacheSize * 1024L * 1024L);
+        this.localCacheKeys = new HashMap<String, String>();
+        this.localCacheHits.set(0);
+
+        for (String className : classNames) {
+            try {
+                String key =
+                        GeneratedClassCache.computeKey(
+                                this.classLoader, this.getKind(),
+                                proactiveVersion, className,
+                                this.dependencies.get(className));
+                if (key != null) {
+                    this.localCacheKeys.put(className, key);
+                }
+            } catch (IOException ioe) {
+                if (this.getLog().isDebugEnabled()) {
+                    this.getLog().debug(
+                            "Cannot compute the cache key of " + className,
+                            ioe);
+                }
+            }
+        }
+    }
+
+    private void closeLocalCache() {
+        if (this.localCache == null) {
+            return;
+        }
+
+        this.metrics.add("cacheHits", this.localCacheHits.get());
+        if (this.localCacheHits.get() > 0) {
+            this.getLog().info(
+                    "Retrieved " + this.localCacheHits.get() + " "
+                            + this.getKind() + "(s) from the local cache");
+        }
+
+        try {
+            this.localCache.evict();
+        } catch (IOException ioe) {
+            this.getLog().warn("Failed to evict entries from the local cache", ioe);
+        }
+        this.localCache = null;
+    }
+
+    /**
+     * Wraps the specified generator so that classes are looked up in the local
+     * cache before being generated, if the cache is enabled.
+     */
+    private ClassGenerator withLocalCache(final ClassGenerator generator) {
+        if (this.localCache == null) {
+            return generator;
+        }
+
+        final GeneratedClassCache cache = this.localCache;
+        final Map<String, String> keys = this.localCacheKeys;
+
+        return new ClassGenerator() {
+            @Override
+            public byte[] generateClass(String className) throws Exception {
+                byte[] data =
+                        AbstractClassGeneratorMojo.this.getFromLocalCache(
+                                cache, keys, className);
+                if (data != null) {
+                    return data;
+                }
+
+                data = generator.generateClass(className);
+                AbstractClassGeneratorMojo.this.putIntoLocalCache(
+                        cache, keys, className, data);
+                return data;
+            }
+        };
+    }
+
+    private byte[] getFromLocalCache(GeneratedClassCache cache,
+                                     Map<String, String> keys,
+                                     String className) {
+        String key = keys.get(className);
+        if (key == null) {
+            return null;
+        }
+
+        byte[] data = cache.get(key);
+        if (data != null) {
+            this.localCacheHits.incrementAndGet();
+        }
+        return data;
+    }
+
+    private void putIntoLocalCache(GeneratedClassCache cache,
+                                   Map<String, String> keys,
+                                   String className, byte[] data) {
+        String key = keys.get(className);
+        if (key == null || data == null) {
+            return;
+        }
+
+        try {
+            cache.put(key, data);
+        } catch (IOException ioe) {
+            this.getLog().warn(
+                    "Failed to store " + className + " into the local cache",
+                    ioe);
+        }
+    }
+
+    /**
+     * Creates a generator over the specified class loader, backed by the
+     * local cache and measuring the generation of each class.
+     */
+    private ClassGenerator createMeasuredGenerator(ClassLoader classLoader)
+            throws Exception {
+        return this.withMetrics(this.withLocalCache(this.createGenerator(classLoader)));
+    }
+
+    /**
+     * Wraps the specified generator so that the generation of each class is
+     * measured.
+     */
+    private ClassGenerator withMetrics(final ClassGenerator generator) {
+        final GenerationMetrics metrics = this.metrics;
+
+        return new ClassGenerator() {
+            @Override
+            public byte[] generateClass(String className) throws Exception {
+                GenerationMetrics.Timer timer = metrics.start();
+                try {
+                    return generator.generateClass(className);
+                } finally {
+                    timer.stop();
+                    metrics.getPhase(GENERATE_PHASE).add(
+                            0, timer.getCpuTime(), timer.getAllocatedBytes(), 1);
+                    metrics.recordClass(className, timer);
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the startup index and the class list of the generated classes
+     * into the output, and the class list into the work directory for the
+     * archive to be dumped from it. Failures are only logged since the
+     * artifacts are optional.
+     */
+    private void writeStartupArtifacts(List<String> classNames) {
+        StartupArtifacts artifacts = new StartupArtifacts();
+        for (String className : classNames) {
+            if (this.classOutput.contains(className)) {
+                artifacts.add(className, this.getSources(className));
+            }
+        }
+
+        if (artifacts.isEmpty()) {
+            return;
+        }
+
+        try {
+            byte[] classList = artifacts.getClassList();
+            this.classOutput.writeResource(
+                    StartupArtifacts.getIndexResourceName(this.getGoal()),
+                    artifacts.getIndex());
+            this.classOutput.writeResource(
+                    StartupArtifacts.getClassListResourceName(this.getGoal()),
+                    classList);
+            new ClassFileWriter(this.workDirectory, false).writeResource(
+                    this.getClassListFile().getName(), classList);
+        } catch (IOException ioe) {
+            this.getLog().warn("Failed to write the startup index", ioe);
+        }
+    }
+
+    /**
+     * Dumps the class data sharing archive of the generated classes unless
+     * it is more recent than the jar and the class list.
+     */
+    private void dumpArchive(File jarFile) {
+        if (jarFile == null) {
+            this.getLog().warn(
+                    "The class data sharing archive requires outputJar");
+            return;
+        }
+
+        File classListFile = this.getClassListFile();
+        File archiveFile =
+                new File(this.buildDirectory, this.finalName + "-"
+                        + this.getJarClassifier() + ".jsa");
+        if (!jarFile.isFile() || !classListFile.isFile()) {
+            return;
+        }
+        if (archiveFile.lastModified() > jarFile.lastModified()
+                && archiveFile.lastModified() > classListFile.lastModified()) {
+            return;
+        }
+
+        List<String> classpath = new ArrayList<String>();
+        classpath.add(jarFile.getPath());
+        for (String classpathElement : this.projectClasspathElements) {
+            if (new File(classpathElement).isFile()) {
+                classpath.add(classpathElement);
+            }
+        }
+
+        File logFile =
+                new File(this.workDirectory, this.getGoal() + "-cds.log");
+        try {
+            StartupArtifacts.dumpArchive(
+                    classpath, classListFile, archiveFile,
+                    splitJvmArgs(this.cdsJvmArgs), logFile);
+            this.getLog().info(
+                    "Dumped class data sharing archive " + archiveFile);
+        } catch (IOException ioe) {
+            this.getLog().warn(
+                    "Failed to dump the class data sharing archive", ioe);
+        }
+    }
+
+    private File getClassListFile() {
+        return new File(this.workDirectory, this.getGoal() + ".classlist");
+    }
+
+    private String getJarClassifier() {
+        if (this.jarClassifier == null || this.jarClassifier.isEmpty()) {
+            return "proactive-" + this.getGoal();
+        }
+
+        return this.jarClassifier;
+    }
+
+    private File getJarFile() {
+        return new File(this.buildDirectory, this.finalName + "-"
+                + this.getJarClassifier() + ".jar");
+    }
+
+    /**
+     * Generates the specified classes in batches, each of them with new
+     * generators over a new class loader, so that the state retained by the
+     * generators of a batch can be garbage collected. A batch ends after
+     * {@link #recycleInterval} classes or once the heap retained after a
+     * garbage collection exceeds {@link #recycleHeapThreshold}.
+     */
+    private void generateWithRecycling(List<String> classNames)
+            throws MojoExecutionException {
+        HeapMonitor heapMonitor = new HeapMonitor(this.recycleHeapThreshold);
+        int batchSize =
+                this.recycleInterval > 0
+                        ? this.recycleInterval : classNames.size();
+        int batches = 0;
+        int start = 0;
+
+        try {
+            while (start < classNames.size()) {
+                List<String> batch =
+                        classNames.subList(start, Math.min(
+                                classNames.size(), start + batchSize));
+                batches++;
+
+                if (this.threads > 1 && batch.size() > 1) {
+                    start += this.generateConcurrently(batch, false, heapMonitor);
+                } else {
+                    ClassLoaderCache.Lease lease =
+                            ClassLoaderCache.createUnshared(this.projectClasspathElements);
+                    Thread.currentThread().setContextClassLoader(
+                            lease.getClassLoader());
+                    try {
+                        start +=
+                                this.generateSerially(
+                                        batch, lease.getClassLoader(),
+                                        heapMonitor);
+                    } finally {
+                        Thread.currentThread().setContextClassLoader(
+                                this.classLoader);
+                        try {
+                            lease.close();
+                        } catch (IOException ioe) {
+                            this.getLog().warn(
+                                    "Failed to release the generator class loader",
+                                    ioe);
+                        }
+                    }
+                }
+
+                // pending writes hold the bytecode of the batch
+                this.processWrites(true);
+                heapMonitor.reset();
+            }
+        } finally {
+            this.metrics.add("recycles", Math.max(0, batches - 1));
+            this.metrics.max("peakHeapBytes", heapMonitor.getPeakUsed());
+            this.getLog().info(
+                    "Generated " + classNames.size() + " " + this.getKind()
+                            + "(s) in " + batches + " batch(es), peak heap "
+                            + heapMonitor.getPeakUsed() / (1024 * 1024)
+                            + " MB");
+        }
+    }
+
+    /**
+     * Generates the specified classes with a generator over the specified
+     * class loader. If a heap monitor is specified, the generation stops once
+     * its threshold is exceeded. Returns the number of classes handled, which
+     * is at least one.
+     */
+    private int generateSerially(List<String> classNames,
+                                 ClassLoader classLoader,
+                                 HeapMonitor heapMonitor)
+            throws MojoExecutionException {
+        if (classNames.isEmpty()) {
+            return 0;
+        }
+
+        ClassGenerator generator;
+        try {
+            generator = this.createMeasuredGenerator(classLoader);
+        } catch (Exception e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+
+        for (int i = 0; i < classNames.size(); i++) {
+            String className = classNames.get(i);
+            try {
+                this.handleGeneratedClass(
+                        className, generator.generateClass(className));
+            } catch (Exception e) {
+                this.logGenerationFailure(className, e);
+            }
+
+            if (heapMonitor != null && heapMonitor.sample()) {
+                return i + 1;
+            }
+        }
+
+        return classNames.size();
+    }
+
+    /**
+     * Generates the specified classes with a pool of threads. If a heap
+     * monitor is specified, the generation stops once its threshold is
+     * exceeded, the classes already generated being handled. Returns the
+     * number of classes handled, which is at least one.
+     */
+    private int generateConcurrently(List<String> classNames,
+                                     boolean shareClassLoaders,
+                                     HeapMonitor heapMonitor)
+            throws MojoExecutionException {
+        ClassGeneratorPool pool =
+                new ClassGeneratorPool(
+                        this.projectClasspathElements, this.threads,
+                        shareClassLoaders, this.directoryState,
+                        new ClassGeneratorPool.Factory() {
+                            @Override
+                            public ClassGenerator createGenerator(ClassLoader classLoader)
+                                    throws Exception {
+                                return AbstractClassGeneratorMojo.this.createMeasuredGenerator(classLoader);
+                            }
+                        });
+
+        try {
+            List<Future<byte[]>> results = pool.submit(classNames);
+
+            // results are consumed in submission order so that the output
+            // and the logs are the same as with a serial generation
+            boolean stopping = false;
+            for (int i = 0; i < classNames.size(); i++) {
+                String className = classNames.get(i);
+                if (stopping && !results.get(i).isDone()) {
+                    // the shutdown of the pool cancels the pending classes
+                    // and waits for the running ones
+                    return i;
+                }
+
+                try {
+                    this.handleGeneratedClass(className, results.get(i)
+                            .get());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException(
+                            "Interrupted while generating " + this.getKind()
+                                    + " " + className, ie);
+                } catch (ExecutionException ee) {
+                    this.logGenerationFailure(className, ee.getCause());
+                } catch (Exception e) {
+                    this.logGenerationFailure(className, e);
+                }
+
+                if (heapMonitor != null && !stopping) {
+                    stopping = heapMonitor.sample();
+                }
+            }
+
+            return classNames.size();
+        } finally {
+            try {
+                pool.shutdown();
+            } catch (IOException ioe) {
+                this.getLog().warn(
+                        "Failed to release the generator class loaders", ioe);
+            }
+        }
+    }
+
+    /**
+     * Handles the specified classes found in the local cache, if enabled, and
+     * returns the other ones. Used before handing classes to workers, which
+     * have no access to the cache.
+     */
+    private List<String> resolveFromLocalCache(List<String> classNames) {
+        if (this.localCache == null) {
+            return classNames;
+        }
+
+        List<String> missingClassNames = new ArrayList<String>();
+        for (String className : classNames) {
+            byte[] data =
+                    this.getFromLocalCache(
+                            this.localCache, this.localCacheKeys, className);
+            if (data != null) {
+                this.handleGeneratedClass(className, data);
+            } else {
+                missingClassNames.add(className);
+            }
+        }
+
+        return missingClassNames;
+    }
+
+    private static List<String> splitJvmArgs(String jvmArgs) {
+        if (jvmArgs == null || jvmArgs.trim().isEmpty()) {
+            return new ArrayList<String>();
+        }
+
+        return Arrays.asList(jvmArgs.trim().split("\\s+"));
+    }
+
+    /**
+     * Generates the specified classes with the generator daemon. Returns the
+     * classes which remain to be generated in process because the daemon is
+     * not available or failed.
+     */
+    private List<String> generateWithDaemon(List<String> classNames) {
+        if (classNames.isEmpty()) {
+            return classNames;
+        }
+
+        GeneratorDaemon generatorDaemon =
+                new GeneratorDaemon(
+                        new File(System.getProperty("user.home"),
+                                ".proactive-maven-plugin"),
+                        GeneratorDaemon.getWorkerClasspath(),
+                        splitJvmArgs(this.daemonJvmArgs),
+                        this.daemonIdleTimeout);
+
+        GeneratorDaemon.Connection connection = null;
+        try {
+            connection = generatorDaemon.connect();
+            if (connection == null) {
+                this.getLog().warn(
+                        "The generator daemon is not available, generating the "
+                                + this.getKind() + "(s) in process");
+                return classNames;
+            }
+
+            GeneratorProtocol.writeRequest(
+                    connection.getOutput(), new GeneratorProtocol.Request(
+                            connection.getToken(),
+                            this.getGeneratorFactory().getClass().getName(),
+                            this.projectClasspathElements,
+                            this.shareClassLoaders, Math.max(1, this.threads),
+                            classNames));
+
+            return this.receiveResults(
+                    GeneratorProtocol.readResults(connection.getInput()),
+                    classNames);
+        } catch (IOException ioe) {
+            this.getLog().warn(
+                    "Failed to contact the generator daemon, generating the "
+                            + this.getKind() + "(s) in process", ioe);
+            return classNames;
+        } finally {
+            Util.closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Generates the specified classes with forked JVMs, each of them being
+     * assigned a contiguous share of the classes. The results are handled in
+     * the order of the classes whatever the order in which the JVMs complete.
+     * Returns the classes which remain to be generated in process because a
+     * JVM failed.
+     */
+    private List<String> generateWithForks(List<String> classNames) {
+        if (classNames.isEmpty()) {
+            return classNames;
+        }
+
+        int forksCount = Math.min(this.forks, classNames.size());
+        List<String> workerClasspath = GeneratorDaemon.getWorkerClasspath();
+        List<String> jvmArgs = splitJvmArgs(this.forkJvmArgs);
+        String generatorFactoryClassName =
+                this.getGeneratorFactory().getClass().getName();
+
+        List<List<String>> shares = new ArrayList<List<String>>(forksCount);
+        List<GeneratorFork> generatorForks =
+                new ArrayList<GeneratorFork>(forksCount);
+        List<String> remainingClassNames = new ArrayList<String>();
+
+        try {
+            for (int i = 0; i < forksCount; i++) {
+                List<String> share =
+                        classNames.subList(
+                                i * classNames.size() / forksCount, (i + 1)
+                                        * classNames.size() / forksCount);
+                shares.add(share);
+
+                File logFile =
+                        new File(this.workDirectory, this.getGoal() + "-fork-"
+                                + (i + 1) + ".log");
+                try {
+                    generatorForks.add(GeneratorFork.start(
+                            workerClasspath, jvmArgs,
+                            new GeneratorProtocol.Request(
+                                    "", generatorFactoryClassName,
+                                    this.projectClasspathElements,
+                                    this.shareClassLoaders, 1, share),
+                            logFile));
+                } catch (IOException ioe) {
+                    this.getLog().warn(
+                            "Failed to fork a generator JVM, generating "
+                                    + share.size() + " " + this.getKind()
+                                    + "(s) in process", ioe);
+                    generatorForks.add(null);
+                }
+            }
+
+            for (int i = 0; i < forksCount; i++) {
+                if (generatorForks.get(i) == null) {
+                    remainingClassNames.addAll(shares.get(i));
+                } else {
+                    remainingClassNames.addAll(this.receiveResults(
+                            generatorForks.get(i).getResults(), shares.get(i)));
+                }
+            }
+        } finally {
+            for (GeneratorFork generatorFork : generatorForks) {
+                if (generatorFork != null) {
+                    generatorFork.close();
+                }
+            }
+        }
+
+        return remainingClassNames;
+    }
+
+    /**
+     * Handles the results of a worker, which are received in the order of the
+     * request. Returns the classes for which no result has been received
+     * because the worker failed.
+     */
+    private List<String> receiveResults(Iterator<GeneratorProtocol.Result> results,
+                                        List<String> classNames) {
+        int received = 0;
+
+        try {
+            while (results.hasNext()) {
+                GeneratorProtocol.Result result = results.next();
+                String className = result.getClassName();
+                if (received >= classNames.size()
+                        || !className.equals(classNames.get(received))) {
+                    throw new IllegalStateException(new IOException(
+                            "Unexpected result for " + className));
+                }
+                received++;
+
+                this.metrics.getPhase(GENERATE_PHASE).add(
+                        0, result.getCpuTime(), result.getAllocatedBytes(), 1);
+                this.metrics.recordClass(
+                        className, GenerationMetrics.Timer.of(
+                                result.getWallTime(), result.getCpuTime(),
+                                result.getAllocatedBytes()));
+
+                if (result.getData() != null) {
+                    if (this.localCache != null) {
+                        this.putIntoLocalCache(
+                                this.localCache, this.localCacheKeys,
+                                className, result.getData());
+                    }
+                    this.handleGeneratedClass(className, result.getData());
+                } else {
+                    this.logGenerationFailure(
+                            className,
+                            new GeneratorProtocol.RemoteGenerationException(
+                                    result.getFailure()));
+                }
+            }
+        } catch (IllegalStateException ise) {
+            this.getLog().warn(
+                    "Generator worker failed after " + received + " "
+                            + this.getKind() + "(s), generating the others in process",
+                    ise.getCause());
+        }
+
+        return new ArrayList<String>(classNames.subList(
+                received, classNames.size()));
+    }
+
+    private void handleGeneratedClass(String className, byte[] data) {
+        GenerationMetrics.Timer timer = this.metrics.start();
+        this.pendingWrites.put(
+                className, this.classOutput.submit(className, data));
+        this.processWrites(false);
+        this.metrics.record(WRITE_PHASE, timer, 1);
+    }
+
+    /**
+     * Logs the outcome of the pending writes, in submission order. Only the
+     * writes already completed are processed unless all is {@code true}.
+     */
+    private void processWrites(boolean all) {
+        Iterator<Map.Entry<String, Future<ClassOutput.Result>>> it =
+                this.pendingWrites.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<String, Future<ClassOutput.Result>> entry = it.next();
+            String className = entry.getKey();
+            Future<ClassOutput.Result> future = entry.getValue();
+
+            if (!all && !future.isDone()) {
+                return;
+            }
+            it.remove();
+
+            try {
+                ClassOutput.Result result = future.get();
+                if (result.isWritten()) {
+                    this.outputChanged = true;
+                    this.metrics.increment("generated");
+                    this.getLog().info(
+                            "Generated " + this.getKind() + " "
+                                    + result.getLocation());
+                } else {
+                    this.metrics.increment("unchanged");
+                    this.getLog().info(
+                            "Unchanged " + this.getKind() + " "
+                                    + result.getLocation());
+                }
+
+                List<String> classDependencies =
+                        this.dependencies.get(className);
+                if (classDependencies != null) {
+                    this.dependencyIndex.put(
+                            className, classDependencies, this.typeStates);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ee) {
+                this.logGenerationFailure(className, ee.getCause());
+            }
+        }
+    }
+
+    private void logGenerationFailure(String className, Throwable t) {
+        this.metrics.increment("failed");
+        this.getLog().error(
+                "Failed to generate " + this.getKind() + " " + className, t);
+    }
+
+    /**
+     * Drops the references to the state of the execution, which must not
+     * outlive its class loader.
+     */
+    private void release() {
+        this.classLoader = null;
+        this.classpathIndex = null;
+        this.proactiveVersion = null;
+        this.classOutput = null;
+        this.pendingWrites = null;
+        this.dependencyIndex = null;
+        this.dependencies = null;
+        this.typeStates = null;
+        this.localCache = null;
+        this.localCacheKeys = null;
+        this.directoryState = null;
+        this.releaseExecutionState();
+    }
+
+    private List<String> getSources(String className) {
+        if (this.assignedClassNames != null) {
+            return this.assignedClassNames.get(className);
+        }
+
+        return this.getSourceClassNames(className);
+    }
+
+    /**
+     * Returns the number of threads used to discover the classes to generate.
+     */
+    protected int getDiscoveryThreads() {
+        return this.discoveryThreads > 0
+                ? this.discoveryThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    protected abstract void init() throws MojoExecutionException;
+
+    /**
+     * Drops the references to the state computed by {@link #init()} and
+     * {@link #getClassNames()}, at the end of an execution.
+     */
+    protected abstract void releaseExecutionState();
+
+    protected abstract List<String> getClassNames()
+            throws MojoExecutionException;
+
+    /**
+     * Returns the names of the classes from which the specified class is
+     * generated. They are used to detect whether a class generated by a
+     * previous build is still up to date.
+     */
+    protected abstract List<String> getSourceClassNames(String className);
+
+    /**
+     * Creates a generator bound to the specified class loader. When several
+     * threads are used, this method is called once per thread with a class
+     * loader dedicated to this thread.
+     */
+    protected ClassGenerator createGenerator(ClassLoader classLoader)
+            throws Exception {
+        return this.getGeneratorFactory().createGenerator(classLoader);
+    }
+
+    /**
+     * Returns the factory of the generators. Since worker processes
+     * instantiate the factory by its name, its class must be public and have
+     * a public constructor without arguments.
+     */
+    protected abstract ClassGeneratorPool.Factory getGeneratorFactory();
+
+    public String writeClass(File outputDirectory, String className, byte[] data)
+            throws IOException {
+        return new ClassFileWriter(outputDirectory, false).write(
+                className, data).getLocation();
+    }
+
+    /**
+     * Returns the directories whose changes may affect the generated classes:
+     * the directories of the project classpath.
+     */
+    protected Set<File> getWatchedDirectories() {
+        Set<File> directories = new LinkedHashSet<File>();
+        directories.add(this.outputDirectory);
+        for (String classpathElement : this.projectClasspathElements) {
+            File file = new File(classpathElement);
+            if (file.isDirectory()) {
+                directories.add(file);
+            }
+        }
+
+        return directories;
+    }
+
+    /**
+     * Returns the file in which the dependencies of the generated classes are
+     * recorded.
+     */
+    File getIndexFile() {
+        return new File(this.workDirectory, this.getGoal() + ".index");
+    }
+
+    protected abstract String getKind();
+
+    /**
+     * Returns the name of the goal implemented by the mojo.
+     */
+    protected abstract String getGoal();
 
 }
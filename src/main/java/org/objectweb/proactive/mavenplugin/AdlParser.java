@@ -0,0 +1,268 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts the interface and controller declarations of Fractal ADL files.
+ * Files are parsed concurrently, with a bounded number of parsed files kept
+ * in memory, and their declarations are returned in the order of the files.
+ *
+ * @author bsauvan
+ */
+public class AdlParser {
+
+    private static final String INTERFACE_ELEMENT = "interface";
+
+    private static final String NAME_ATTRIBUTE = "name";
+
+    private static final String SIGNATURE_ATTRIBUTE = "signature";
+
+    private static final String CONTROLLER_ELEMENT = "controller";
+
+    private static final String DESC_ATTRIBUTE = "desc";
+
+    // elements which cannot contain interface or controller elements
+    private static final Set<String> SKIPPED_ELEMENTS =
+            new HashSet<String>(Arrays.asList(
+                    "attributes", "binding", "content", "comment",
+                    "coordinates", "virtual-node", "exportedVirtualNodes",
+                    "logger"));
+
+    private static final ThreadLocal<XMLInputFactory> factories =
+            new ThreadLocal<XMLInputFactory>() {
+                @Override
+                protected XMLInputFactory initialValue() {
+                    return XMLInputFactory.newInstance();
+                }
+            };
+
+    /**
+     * A declaration found in an ADL file: either an interface, with its name
+     * and signature, or a controller configuration.
+     */
+    public static class Declaration {
+
+        private final String interfaceName;
+
+        private final String interfaceSignature;
+
+        private final String controllerDesc;
+
+        private Declaration(String interfaceName, String interfaceSignature,
+                String controllerDesc) {
+            this.interfaceName = interfaceName;
+            this.interfaceSignature = interfaceSignature;
+            this.controllerDesc = controllerDesc;
+        }
+
+        public boolean isInterface() {
+            return this.controllerDesc == null;
+        }
+
+        public String getInterfaceName() {
+            return this.interfaceName;
+        }
+
+        public String getInterfaceSignature() {
+            return this.interfaceSignature;
+        }
+
+        public String getControllerDesc() {
+            return this.controllerDesc;
+        }
+
+    }
+
+    /**
+     * Declarations of the parsed files, in the order of the files. Closing
+     * the iterator stops the parsing of the remaining files, which is
+     * required if the iteration ends before all the files are consumed.
+     */
+    public interface Declarations extends Iterator<List<Declaration>>,
+            Closeable {
+
+        @Override
+        void close();
+
+    }
+
+    private final int threads;
+
+    public AdlParser(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Parses the specified ADL files. The declarations of a file are computed
+     * when the iterator reaches it, the following files being parsed in the
+     * background.
+     */
+    public Declarations parse(final List<URL> adlUrls) {
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "proactive-adl-parser");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        final int window = this.threads * 2;
+
+        return new Declarations() {
+            private final List<Future<List<Declaration>>> pending =
+                    new ArrayList<Future<List<Declaration>>>();
+
+            private int submitted;
+
+            private int consumed;
+
+            @Override
+            public boolean hasNext() {
+                if (this.consumed < adlUrls.size()) {
+                    return true;
+                }
+                executor.shutdown();
+                return false;
+            }
+
+            @Override
+            public List<Declaration> next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                while (this.submitted < adlUrls.size()
+                        && this.submitted - this.consumed < window) {
+                    final URL adlUrl = adlUrls.get(this.submitted++);
+                    this.pending.add(executor.submit(new Callable<List<Declaration>>() {
+                        @Override
+                        public List<Declaration> call() throws Exception {
+                            return AdlParser.parse(adlUrl);
+                        }
+                    }));
+                }
+
+                URL adlUrl = adlUrls.get(this.consumed++);
+                try {
+                    return this.pending.remove(0).get();
+                } catch (InterruptedException ie) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(
+                            "Interrupted while parsing " + adlUrl, ie);
+                } catch (ExecutionException ee) {
+                    executor.shutdownNow();
+                    throw new IllegalStateException("Failed to parse "
+                            + adlUrl, ee.getCause());
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                executor.shutdownNow();
+            }
+        };
+    }
+
+    /**
+     * Parses a single ADL file.
+     */
+    public static List<Declaration> parse(URL adlUrl) throws Exception {
+        List<Declaration> declarations = new ArrayList<Declaration>();
+        InputStream in = Util.openStream(adlUrl);
+
+        try {
+            XMLStreamReader streamReader =
+                    factories.get().createXMLStreamReader(
+                            adlUrl.toString(), in);
+            try {
+                while (streamReader.hasNext()) {
+                    if (streamReader.next() != XMLStreamReader.START_ELEMENT) {
+                        continue;
+                    }
+
+                    String elementName = streamReader.getLocalName();
+
+                    if (elementName.equals(INTERFACE_ELEMENT)) {
+                        declarations.add(new Declaration(
+                                streamReader.getAttributeValue(
+                                        null, NAME_ATTRIBUTE),
+                                streamReader.getAttributeValue(
+                                        null, SIGNATURE_ATTRIBUTE), null));
+                    } else if (elementName.equals(CONTROLLER_ELEMENT)) {
+                        String desc =
+                                streamReader.getAttributeValue(
+                                        null, DESC_ATTRIBUTE);
+                        if (desc != null) {
+                            declarations.add(new Declaration(null, null, desc));
+                        }
+                    } else if (SKIPPED_ELEMENTS.contains(elementName)) {
+                        skipElement(streamReader);
+                    }
+                }
+            } finally {
+                streamReader.close();
+            }
+        } finally {
+            in.close();
+        }
+
+        return declarations;
+    }
+
+    private static void skipElement(XMLStreamReader streamReader)
+            throws XMLStreamException {
+        int depth = 1;
+
+        while (depth > 0) {
+            int code = streamReader.next();
+            if (code == XMLStreamReader.START_ELEMENT) {
+                depth++;
+            } else if (code == XMLStreamReader.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,431 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MavenPluginManager;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Mojo used to generate the ProActive classes of all the modules of the
+ * reactor at once. The classes are discovered in each module as by the
+ * generation goals of the module, then deduplicated by goal, class and
+ * ProActive version: each class is generated once, into the module whose
+ * classes contain its source class or, if the source class comes from a
+ * dependency, into a module requiring it which all the other modules
+ * requiring it depend on. If there is no such module, each module requiring
+ * the class gets its own copy. The copies generated by previous builds into
+ * the other modules are deleted.
+ * <p>
+ * The goal is invoked once the modules are compiled, for instance with
+ * {@code mvn process-classes proactive:aggregate}, instead of binding the
+ * generation goals to the modules. Modules are processed concurrently.
+ * 
+ * @goal aggregate
+ * @aggregator
+ * @requiresDependencyResolution compile+runtime
+ * 
+ * @author lpellegr
+ */
+public class AggregateMojo extends AbstractMojo {
+
+    /**
+     * Generation goals to aggregate, separated by commas. Defaults to the
+     * generation goals bound to each module in its POM.
+     * 
+     * @parameter expression="${proactive.aggregateGoals}"
+     */
+    private String aggregateGoals;
+
+    /**
+     * Number of modules processed concurrently. Defaults to the number of
+     * available processors if it is 0.
+     * 
+     * @parameter expression="${proactive.moduleThreads}" default-value="0"
+     */
+    private int moduleThreads;
+
+    /**
+     * @parameter expression="${reactorProjects}"
+     * @readonly
+     * @required
+     */
+    private List<MavenProject> reactorProjects;
+
+    /**
+     * @parameter expression="${mojoExecution}"
+     * @readonly
+     * @required
+     */
+    private MojoExecution mojoExecution;
+
+    /**
+     * @parameter expression="${session}"
+     * @readonly
+     * @required
+     */
+    private MavenSession session;
+
+    /**
+     * @component
+     */
+    private MavenPluginManager pluginManager;
+
+    /**
+     * Execution of a generation goal for a module of the reactor.
+     */
+    static class Module {
+
+        private final MavenProject project;
+
+        private final String goal;
+
+        private final MojoExecution execution;
+
+        private final AbstractClassGeneratorMojo mojo;
+
+        AbstractClassGeneratorMojo.Targets targets;
+
+        final Map<String, List<String>> assignedClassNames =
+                new LinkedHashMap<String, List<String>>();
+
+        Module(MavenProject project, String goal, MojoExecution execution,
+                AbstractClassGeneratorMojo mojo) {
+            this.project = project;
+            this.goal = goal;
+            this.execution = execution;
+            this.mojo = mojo;
+        }
+
+        /**
+         * Indicates whether one of the specified classes is a class of the
+         * module.
+         */
+        boolean owns(List<String> classNames) {
+            File classesDirectory =
+                    new File(this.project.getBuild().getOutputDirectory());
+
+            for (String className : classNames) {
+                if (className != null
+                        && new File(classesDirectory, className.replace(
+                                '.', File.separatorChar)
+                                + ".class").isFile()) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Indicates whether the classes of the specified module are on the
+         * classpath of the module.
+         */
+        boolean dependsOn(Module module) {
+            if (module.project == this.project) {
+                return true;
+            }
+
+            for (Artifact artifact : this.project.getArtifacts()) {
+                if (artifact.getGroupId().equals(module.project.getGroupId())
+                        && artifact.getArtifactId().equals(
+                                module.project.getArtifactId())) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return this.project.getArtifactId() + ":" + this.goal;
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        List<Module> modules = new ArrayList<Module>();
+        int threads = this.moduleThreads;
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread =
+                                new Thread(r, "proactive-module-generator");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        ClassLoaderCache.beginExecution(this.session);
+        try {
+            this.createModules(modules);
+            if (modules.isEmpty()) {
+                this.getLog().info("No module to generate classes for");
+                return;
+            }
+
+            this.run(executor, modules, new ModuleTask() {
+                @Override
+                public void run(Module module) throws MojoExecutionException {
+                    module.targets = module.mojo.discover();
+                }
+            });
+
+            this.assignClasses(modules);
+
+            this.run(executor, modules, new ModuleTask() {
+                @Override
+                public void run(Module module) throws MojoExecutionException,
+                        MojoFailureException {
+                    module.mojo.assignedClassNames = module.assignedClassNames;
+                    module.mojo.execute();
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+            for (Module module : modules) {
+                this.pluginManager.releaseMojo(module.mojo, module.execution);
+            }
+            ClassLoaderCache.endExecution(this.session);
+        }
+    }
+
+    /**
+     * Configures the generation goals of the modules declaring the plugin.
+     * Mojos are configured for the module being the current project of the
+     * session, which is restored afterwards.
+     */
+    private void createModules(List<Module> modules)
+            throws MojoExecutionException {
+        PluginDescriptor pluginDescriptor =
+                this.mojoExecution.getMojoDescriptor().getPluginDescriptor();
+        List<String> goals = null;
+        if (this.aggregateGoals != null
+                && !this.aggregateGoals.trim().isEmpty()) {
+            goals = GenerationGoals.parse(this.aggregateGoals);
+        }
+
+        MavenProject currentProject = this.session.getCurrentProject();
+        try {
+            for (MavenProject project : this.reactorProjects) {
+                Plugin plugin =
+                        GenerationGoals.getPlugin(pluginDescriptor, project);
+                if (plugin == null) {
+                    continue;
+                }
+
+                this.session.setCurrentProject(project);
+                for (String goal : goals != null
+                        ? goals : GenerationGoals.getBoundGoals(plugin)) {
+                    MojoExecution execution =
+                            GenerationGoals.createExecution(
+                                    pluginDescriptor, plugin, goal,
+                                    "aggregate-" + goal);
+                    AbstractClassGeneratorMojo mojo =
+                            GenerationGoals.createMojo(
+                                    this.pluginManager, this.session,
+                                    execution);
+                    modules.add(new Module(project, goal, execution, mojo));
+                }
+            }
+        } finally {
+            this.session.setCurrentProject(currentProject);
+        }
+    }
+
+    /**
+     * Assigns the classes discovered by the modules and logs a summary of
+     * the assignment.
+     */
+    private void assignClasses(List<Module> modules) {
+        int requested = 0;
+        for (Module module : modules) {
+            requested += module.targets.getSourceClassNames().size();
+        }
+        int assigned = assign(modules);
+
+        this.getLog().info(
+                "Generating " + assigned + " classes for " + modules.size()
+                        + " module goals, " + (requested - assigned)
+                        + " duplicates removed");
+        if (this.getLog().isDebugEnabled()) {
+            for (Module module : modules) {
+                this.getLog().debug(
+                        module + ": " + module.assignedClassNames.size()
+                                + " of "
+                                + module.targets.getSourceClassNames().size()
+                                + " discovered classes assigned");
+            }
+        }
+    }
+
+    /**
+     * Assigns each class discovered by the modules to the modules generating
+     * it and returns the number of classes to generate. The modules are in
+     * the order of the reactor, hence a module precedes the modules depending
+     * on it.
+     */
+    static int assign(List<Module> modules) {
+        Map<String, List<Module>> requesters =
+                new LinkedHashMap<String, List<Module>>();
+
+        for (Module module : modules) {
+            String prefix =
+                    module.goal + ":" + module.targets.getProActiveVersion()
+                            + ":";
+
+            for (String className : module.targets.getSourceClassNames()
+                    .keySet()) {
+                String key = prefix + className;
+                List<Module> modulesRequesting = requesters.get(key);
+                if (modulesRequesting == null) {
+                    modulesRequesting = new ArrayList<Module>();
+                    requesters.put(key, modulesRequesting);
+                }
+                modulesRequesting.add(module);
+            }
+        }
+
+        int assigned = 0;
+        for (Map.Entry<String, List<Module>> entry : requesters.entrySet()) {
+            String key = entry.getKey();
+            String className = key.substring(key.lastIndexOf(':') + 1);
+
+            for (Module module : selectModules(className, entry.getValue())) {
+                module.assignedClassNames.put(
+                        className,
+                        module.targets.getSourceClassNames().get(className));
+                assigned++;
+            }
+        }
+
+        return assigned;
+    }
+
+    /**
+     * Selects the modules generating the specified class among the modules
+     * requiring it: the module whose classes contain a source class of the
+     * class, else a module all the others depend on, else all of them since
+     * none of them sees the classes generated into the others.
+     */
+    private static List<Module> selectModules(String className,
+                                              List<Module> requesters) {
+        for (Module module : requesters) {
+            if (module.owns(module.targets.getSourceClassNames().get(className))) {
+                return Collections.singletonList(module);
+            }
+        }
+
+        for (Module module : requesters) {
+            boolean upstream = true;
+            for (Module requester : requesters) {
+                if (!requester.dependsOn(module)) {
+                    upstream = false;
+                    break;
+                }
+            }
+
+            if (upstream) {
+                return Collections.singletonList(module);
+            }
+        }
+
+        return requesters;
+    }
+
+    private interface ModuleTask {
+
+        void run(Module module) throws MojoExecutionException,
+                MojoFailureException;
+
+    }
+
+    /**
+     * Runs the specified task for each module and waits for all of them. The
+     * failure of the first failed module, in the order of the reactor, is
+     * rethrown.
+     */
+    private void run(ExecutorService executor, List<Module> modules,
+                     final ModuleTask task) throws MojoExecutionException,
+            MojoFailureException {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (final Module module : modules) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    task.run(module);
+                    return null;
+                }
+            }));
+        }
+
+        Throwable failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted", ie);
+            } catch (ExecutionException ee) {
+                if (failure == null) {
+                    failure = ee.getCause();
+                }
+            }
+        }
+
+        if (failure instanceof MojoExecutionException) {
+            throw (MojoExecutionException) failure;
+        }
+        if (failure instanceof MojoFailureException) {
+            throw (MojoFailureException) failure;
+        }
+        if (failure != null) {
+            throw new MojoExecutionException(failure.getMessage(), failure);
+        }
+    }
+
+}
@@ -0,0 +1,379 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Header of a class file (access flags, name, super class, interfaces and,
+ * optionally, class annotations and types of the method signatures) read
+ * directly from its bytecode, without loading the class.
+ *
+ * @author lpellegr
+ */
+public class ClassFileHeader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+
+    private static final int CONSTANT_INTEGER = 3;
+
+    private static final int CONSTANT_FLOAT = 4;
+
+    private static final int CONSTANT_LONG = 5;
+
+    private static final int CONSTANT_DOUBLE = 6;
+
+    private static final int CONSTANT_CLASS = 7;
+
+    private static final int CONSTANT_STRING = 8;
+
+    private static final int CONSTANT_FIELDREF = 9;
+
+    private static final int CONSTANT_METHODREF = 10;
+
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+
+    private static final int CONSTANT_METHOD_TYPE = 16;
+
+    private static final int CONSTANT_DYNAMIC = 17;
+
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+
+    private static final int CONSTANT_MODULE = 19;
+
+    private static final int CONSTANT_PACKAGE = 20;
+
+    public static final int ACC_PUBLIC = 0x0001;
+
+    public static final int ACC_PRIVATE = 0x0002;
+
+    public static final int ACC_FINAL = 0x0010;
+
+    public static final int ACC_INTERFACE = 0x0200;
+
+    public static final int ACC_ABSTRACT = 0x0400;
+
+    public static final int ACC_SYNTHETIC = 0x1000;
+
+    public static final int ACC_ANNOTATION = 0x2000;
+
+    public static final int ACC_ENUM = 0x4000;
+
+    private final int accessFlags;
+
+    private final String className;
+
+    private final String superClassName;
+
+    private final List<String> interfaceNames;
+
+    private final List<String> annotationNames;
+
+    private final Set<String> signatureTypeNames;
+
+    private ClassFileHeader(int accessFlags, String className,
+            String superClassName, List<String> interfaceNames,
+            List<String> annotationNames, Set<String> signatureTypeNames) {
+        this.accessFlags = accessFlags;
+        this.className = className;
+        this.superClassName = superClassName;
+        this.interfaceNames = Collections.unmodifiableList(interfaceNames);
+        this.annotationNames = Collections.unmodifiableList(annotationNames);
+        this.signatureTypeNames =
+                Collections.unmodifiableSet(signatureTypeNames);
+    }
+
+    public int getAccessFlags() {
+        return this.accessFlags;
+    }
+
+    public boolean hasAccessFlag(int flag) {
+        return (this.accessFlags & flag) != 0;
+    }
+
+    public String getClassName() {
+        return this.className;
+    }
+
+    /**
+     * Returns the name of the super class, which is {@code java.lang.Object}
+     * for the classes without explicit super class, or {@code null} for
+     * {@code java.lang.Object} itself.
+     */
+    public String getSuperClassName() {
+        return this.superClassName;
+    }
+
+    public List<String> getInterfaceNames() {
+        return this.interfaceNames;
+    }
+
+    /**
+     * Returns the names of the annotations of the class, visible or not at
+     * runtime. The list is empty unless the annotations have been read.
+     */
+    public List<String> getAnnotationNames() {
+        return this.annotationNames;
+    }
+
+    /**
+     * Returns the names of the classes referenced by the parameter, return and
+     * exception types of the non-private methods. The set is empty unless the
+     * members have been read.
+     */
+    public Set<String> getSignatureTypeNames() {
+        return this.signatureTypeNames;
+    }
+
+    public static ClassFileHeader parse(byte[] bytecode) throws IOException {
+        return parse(bytecode, false);
+    }
+
+    /**
+     * Parses the header of the specified class file. Reading the annotations
+     * and the method signatures requires to go through the fields and the
+     * methods, hence it is optional.
+     */
+    public static ClassFileHeader parse(byte[] bytecode, boolean readMembers)
+            throws IOException {
+        DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(bytecode));
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        // minor and major versions
+        in.skipBytes(4);
+
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8Constants = new String[constantPoolCount];
+        int[] classConstants = new int[constantPoolCount];
+
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8Constants[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classConstants[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    // 8-byte constants take two entries
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        int accessFlags = in.readUnsignedShort();
+        String className =
+                getClassName(utf8Constants, classConstants, in.readUnsignedShort());
+        String superClassName =
+                getClassName(utf8Constants, classConstants, in.readUnsignedShort());
+
+        int interfacesCount = in.readUnsignedShort();
+        List<String> interfaceNames = new ArrayList<String>(interfacesCount);
+        for (int i = 0; i < interfacesCount; i++) {
+            interfaceNames.add(getClassName(
+                    utf8Constants, classConstants, in.readUnsignedShort()));
+        }
+
+        List<String> annotationNames = new ArrayList<String>();
+        Set<String> signatureTypeNames = new LinkedHashSet<String>();
+        if (readMembers) {
+            skipMembers(in);
+            readMethods(in, utf8Constants, classConstants, signatureTypeNames);
+
+            int attributesCount = in.readUnsignedShort();
+            for (int i = 0; i < attributesCount; i++) {
+                String attributeName = utf8Constants[in.readUnsignedShort()];
+                int length = in.readInt();
+
+                if ("RuntimeVisibleAnnotations".equals(attributeName)
+                        || "RuntimeInvisibleAnnotations".equals(attributeName)) {
+                    int annotationsCount = in.readUnsignedShort();
+                    for (int j = 0; j < annotationsCount; j++) {
+                        annotationNames.add(readAnnotation(in, utf8Constants));
+                    }
+                } else {
+                    in.skipBytes(length);
+                }
+            }
+        }
+
+        return new ClassFileHeader(
+                accessFlags, className, superClassName, interfaceNames,
+                annotationNames, signatureTypeNames);
+    }
+
+    private static void readMethods(DataInputStream in,
+                                    String[] utf8Constants,
+                                    int[] classConstants,
+                                    Set<String> signatureTypeNames)
+            throws IOException {
+        int methodsCount = in.readUnsignedShort();
+
+        for (int i = 0; i < methodsCount; i++) {
+            boolean visible = (in.readUnsignedShort() & ACC_PRIVATE) == 0;
+            in.skipBytes(2);
+            String descriptor = utf8Constants[in.readUnsignedShort()];
+            if (visible) {
+                addDescriptorTypeNames(descriptor, signatureTypeNames);
+            }
+
+            int attributesCount = in.readUnsignedShort();
+            for (int j = 0; j < attributesCount; j++) {
+                String attributeName = utf8Constants[in.readUnsignedShort()];
+                int length = in.readInt();
+
+                if (visible && "Exceptions".equals(attributeName)) {
+                    int exceptionsCount = in.readUnsignedShort();
+                    for (int k = 0; k < exceptionsCount; k++) {
+                        signatureTypeNames.add(getClassName(
+                                utf8Constants, classConstants,
+                                in.readUnsignedShort()));
+                    }
+                } else {
+                    in.skipBytes(length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the classes referenced by a field or method descriptor.
+     */
+    private static void addDescriptorTypeNames(String descriptor,
+                                               Set<String> typeNames) {
+        int index = descriptor.indexOf('L');
+
+        while (index >= 0) {
+            int end = descriptor.indexOf(';', index);
+            typeNames.add(descriptor.substring(index + 1, end).replace('/', '.'));
+            index = descriptor.indexOf('L', end);
+        }
+    }
+
+    private static void skipMembers(DataInputStream in) throws IOException {
+        int membersCount = in.readUnsignedShort();
+
+        for (int i = 0; i < membersCount; i++) {
+            // access flags, name and descriptor
+            in.skipBytes(6);
+            skipAttributes(in);
+        }
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributesCount = in.readUnsignedShort();
+
+        for (int i = 0; i < attributesCount; i++) {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    /**
+     * Reads an annotation and returns the name of its type.
+     */
+    private static String readAnnotation(DataInputStream in,
+                                         String[] utf8Constants)
+            throws IOException {
+        String descriptor = utf8Constants[in.readUnsignedShort()];
+
+        int pairsCount = in.readUnsignedShort();
+        for (int i = 0; i < pairsCount; i++) {
+            in.skipBytes(2);
+            skipElementValue(in, utf8Constants);
+        }
+
+        // descriptors have the form Lpackage/Name;
+        return descriptor.substring(1, descriptor.length() - 1).replace(
+                '/', '.');
+    }
+
+    private static void skipElementValue(DataInputStream in,
+                                         String[] utf8Constants)
+            throws IOException {
+        int tag = in.readUnsignedByte();
+
+        switch (tag) {
+            case 'e':
+                in.skipBytes(4);
+                break;
+            case '@':
+                readAnnotation(in, utf8Constants);
+                break;
+            case '[':
+                int valuesCount = in.readUnsignedShort();
+                for (int i = 0; i < valuesCount; i++) {
+                    skipElementValue(in, utf8Constants);
+                }
+                break;
+            default:
+                // constants, strings and classes
+                in.skipBytes(2);
+        }
+    }
+
+    private static String getClassName(String[] utf8Constants,
+                                       int[] classConstants, int index) {
+        if (index == 0) {
+            return null;
+        }
+
+        return utf8Constants[classConstants[index]].replace('/', '.');
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes generated classes into an output directory. A class file whose
+ * content is identical to the generated bytecode is left untouched, so that
+ * its modification date does not change, and other files are replaced
+ * atomically. Writes can be performed by a background thread.
+ *
+ * @author lpellegr
+ */
+public class ClassFileWriter implements ClassOutput {
+
+    private final File outputDirectory;
+
+    private final ExecutorService executor;
+
+    private final Set<Path> createdDirectories =
+            Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+    /**
+     * Creates a writer. When asynchronous, writes are performed in submission
+     * order by a single background thread.
+     */
+    public ClassFileWriter(File outputDirectory, boolean asynchronous) {
+        this.outputDirectory = outputDirectory;
+
+        if (asynchronous) {
+            this.executor =
+                    Executors.newSingleThreadExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread =
+                                    new Thread(r, "proactive-class-writer");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public File getClassFile(String className) {
+        return new File(this.outputDirectory, className.replace(
+                '.', File.separatorChar)
+                + ".class");
+    }
+
+    @Override
+    public boolean contains(String className) {
+        return this.getClassFile(className).isFile();
+    }
+
+    /**
+     * Writes the bytecode of the specified class. The returned future is
+     * already completed if the writer is synchronous.
+     */
+    @Override
+    public Future<Result> submit(final String className, final byte[] data) {
+        Callable<Result> task = new Callable<Result>() {
+            @Override
+            public Result call() throws IOException {
+                return ClassFileWriter.this.write(className, data);
+            }
+        };
+
+        if (this.executor != null) {
+            return this.executor.submit(task);
+        }
+
+        FutureTask<Result> future = new FutureTask<Result>(task);
+        future.run();
+        return future;
+    }
+
+    public Result write(String className, byte[] data) throws IOException {
+        return this.writeFile(this.getClassFile(className), data);
+    }
+
+    @Override
+    public Result writeResource(String resourceName, byte[] data)
+            throws IOException {
+        return this.writeFile(new File(this.outputDirectory, resourceName.replace(
+                '/', File.separatorChar)), data);
+    }
+
+    private Result writeFile(File file, byte[] data) throws IOException {
+        Path path = file.toPath();
+
+        if (hasContent(file, data)) {
+            return new Result(file.toString(), false);
+        }
+
+        Path directory = path.getParent();
+        if (this.createdDirectories.add(directory)) {
+            Files.createDirectories(directory);
+        }
+
+        Path tmpPath =
+                Files.createTempFile(
+                        directory, path.getFileName().toString(), ".tmp");
+        try {
+            OutputStream out = Files.newOutputStream(tmpPath);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+
+            try {
+                Files.move(
+                        tmpPath, path, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+
+        return new Result(file.toString(), true);
+    }
+
+    private static boolean hasContent(File file, byte[] data)
+            throws IOException {
+        if (file.length() != data.length || !file.isFile()) {
+            return false;
+        }
+
+        InputStream in = Files.newInputStream(file.toPath());
+        try {
+            return Arrays.equals(Util.readFully(in), data);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String delete(String className) {
+        File file = this.getClassFile(className);
+
+        return file.delete() ? file.toString() : null;
+    }
+
+    /**
+     * Waits for the pending writes and stops the background thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (this.executor != null) {
+            this.executor.shutdown();
+            this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
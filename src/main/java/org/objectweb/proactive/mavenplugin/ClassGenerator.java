@@ -0,0 +1,30 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+/**
+ * Generates the bytecode of a ProActive class. An instance is bound to the
+ * class loader it has been created for and must only be used by one thread at
+ * a time.
+ *
+ * @author lpellegr
+ */
+public interface ClassGenerator {
+
+    byte[] generateClass(String className) throws Exception;
+
+}
@@ -0,0 +1,206 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of worker threads generating classes concurrently. The
+ * ProActive generators keep non thread-safe static state (Javassist class
+ * pools, context class loader), hence each worker works with its own class
+ * loader over the project classpath and its own {@link ClassGenerator}. The
+ * class loader of a worker is its context class loader while it generates a
+ * class only.
+ *
+ * @author lpellegr
+ */
+public class ClassGeneratorPool {
+
+    /**
+     * Creates the generator used by a worker from the class loader dedicated
+     * to this worker.
+     */
+    public interface Factory {
+
+        ClassGenerator createGenerator(ClassLoader classLoader)
+                throws Exception;
+
+    }
+
+    private final List<String> classpathElements;
+
+    private final boolean shareClassLoaders;
+
+    private final ClassLoaderCache.DirectoryState directoryState;
+
+    private final Factory factory;
+
+    private final ThreadPoolExecutor executor;
+
+    private final List<ClassLoaderCache.Lease> leases =
+            new ArrayList<ClassLoaderCache.Lease>();
+
+    private final ThreadLocal<ClassGenerator> generators =
+            new ThreadLocal<ClassGenerator>();
+
+    private final ThreadLocal<ClassLoader> classLoaders =
+            new ThreadLocal<ClassLoader>();
+
+    public ClassGeneratorPool(List<String> classpathElements, int threads,
+            boolean shareClassLoaders, Factory factory) {
+        this(classpathElements, threads, shareClassLoaders, null, factory);
+    }
+
+    /**
+     * Creates a pool whose workers acquire their shared class loaders for an
+     * execution in the specified state, instead of digesting the directories
+     * of the classpath for each worker.
+     */
+    public ClassGeneratorPool(List<String> classpathElements, int threads,
+            boolean shareClassLoaders,
+            ClassLoaderCache.DirectoryState directoryState, Factory factory) {
+        this.classpathElements = classpathElements;
+        this.shareClassLoaders = shareClassLoaders;
+        this.directoryState = directoryState;
+        this.factory = factory;
+        this.executor =
+                new ThreadPoolExecutor(
+                        threads, threads, 0, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            private final AtomicInteger counter =
+                                    new AtomicInteger();
+
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread thread =
+                                        new Thread(r, "proactive-generator-"
+                                                + this.counter.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+    }
+
+    /**
+     * Submits the generation of the specified classes. The returned futures
+     * are in the same order as the class names.
+     */
+    public List<Future<byte[]>> submit(List<String> classNames) {
+        List<Future<byte[]>> results =
+                new ArrayList<Future<byte[]>>(classNames.size());
+
+        for (final String className : classNames) {
+            results.add(this.executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return ClassGeneratorPool.this.generateClass(className);
+                }
+            }));
+        }
+
+        return results;
+    }
+
+    private byte[] generateClass(String className) throws Exception {
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+
+        try {
+            ClassGenerator generator = this.generators.get();
+            if (generator == null) {
+                ClassLoaderCache.Lease lease;
+                if (!this.shareClassLoaders) {
+                    lease = ClassLoaderCache.createUnshared(this.classpathElements);
+                } else if (this.directoryState != null) {
+                    lease =
+                            ClassLoaderCache.acquire(
+                                    this.classpathElements, this.directoryState);
+                } else {
+                    lease = ClassLoaderCache.acquire(this.classpathElements);
+                }
+                synchronized (this.leases) {
+                    this.leases.add(lease);
+                }
+                URLClassLoader classLoader = lease.getClassLoader();
+                currentThread.setContextClassLoader(classLoader);
+                generator = this.factory.createGenerator(classLoader);
+                this.generators.set(generator);
+                this.classLoaders.set(classLoader);
+            } else {
+                currentThread.setContextClassLoader(this.classLoaders.get());
+            }
+
+            return generator.generateClass(className);
+        } finally {
+            currentThread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    /**
+     * Stops the workers and releases the class loaders they were using. The
+     * generations not started yet are cancelled, whereas the running ones
+     * are waited for, since their class loaders cannot be released before
+     * they complete.
+     */
+    public void shutdown() throws IOException {
+        // the queued generations are cancelled so that waiting for their
+        // result does not block, the running ones are not interrupted
+        List<Runnable> pending = new ArrayList<Runnable>();
+        this.executor.getQueue().drainTo(pending);
+        this.executor.shutdown();
+        for (Runnable task : pending) {
+            ((Future<?>) task).cancel(false);
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (this.executor.awaitTermination(
+                            Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+
+            synchronized (this.leases) {
+                for (ClassLoaderCache.Lease lease : this.leases) {
+                    lease.close();
+                }
+                this.leases.clear();
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,470 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Cache of class loaders shared by the executions of a build session. The
+ * jars of a classpath (ProActive, Javassist and the other dependencies) are
+ * loaded by a shared parent class loader, keyed by a digest of these jars,
+ * whereas the directories (the classes of the reactor modules) are loaded by
+ * a child class loader owned by the execution. Only the executions whose
+ * classpaths have exactly the same jars share a parent class loader. Since
+ * the ProActive generators keep static state, a shared class loader is used
+ * by one execution at a time: executions running concurrently over the same
+ * jars get distinct copies.
+ * <p>
+ * The static state of the generators, such as the Javassist class pools,
+ * also caches the classes of the module directories. A shared class loader
+ * is therefore discarded when the classes of a directory it has already
+ * served have changed since, as between the builds served by the daemon or
+ * the regenerations of the watch goal. The classes of the directories are
+ * digested once per execution, see {@link DirectoryState}. Shared class
+ * loaders are closed once idle at the end of the session, when a new session
+ * starts, or when too many of them are idle.
+ *
+ * @author lpellegr
+ */
+public class ClassLoaderCache {
+
+    private static final int MAX_IDLE_LAYERS = 16;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // access ordered, so that the least recently used layers come first
+    private static final Map<String, Layer> layers =
+            new LinkedHashMap<String, Layer>(16, 0.75f, true);
+
+    private static Object session;
+
+    // executions of the session using the cache, see beginExecution
+    private static int activeExecutions;
+
+    private static Thread reaper;
+
+    private ClassLoaderCache() {
+    }
+
+    /**
+     * Notifies the cache of the build session in which the next class loaders
+     * are acquired. The idle class loaders of a previous session are closed.
+     */
+    public static synchronized void beginSession(Object currentSession) {
+        if (session != currentSession) {
+            closeIdle();
+            session = currentSession;
+        }
+    }
+
+    /**
+     * Notifies the cache that an execution of the specified session starts
+     * using it. Each call must be followed by a call to
+     * {@link #endExecution(MavenSession)}.
+     */
+    public static synchronized void beginExecution(MavenSession currentSession) {
+        beginSession(currentSession);
+        activeExecutions++;
+    }
+
+    /**
+     * Notifies the cache that an execution ends. Once no execution is active
+     * and all the projects of the session are built, whatever the order in
+     * which they complete in a parallel build, the idle class loaders are
+     * closed. Since the projects still running another plugin may use the
+     * cache later, the completion of the session is awaited by a background
+     * thread.
+     */
+    public static void endExecution(final MavenSession currentSession) {
+        synchronized (ClassLoaderCache.class) {
+            if (--activeExecutions > 0 || currentSession == null) {
+                return;
+            }
+            if (Util.isSessionCompleted(currentSession)) {
+                closeIdle();
+                return;
+            }
+            if (reaper != null) {
+                return;
+            }
+
+            reaper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        awaitSessionEnd(currentSession);
+                    } catch (InterruptedException ie) {
+                        // the JVM exits
+                    } finally {
+                        synchronized (ClassLoaderCache.class) {
+                            reaper = null;
+                        }
+                    }
+                }
+            }, "proactive-class-loader-reaper");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+    }
+
+    private static void awaitSessionEnd(MavenSession currentSession)
+            throws InterruptedException {
+        while (true) {
+            Thread.sleep(1000);
+
+            synchronized (ClassLoaderCache.class) {
+                // the next execution of the session, if any, takes over
+                if (session != currentSession || activeExecutions > 0) {
+                    return;
+                }
+                if (Util.isSessionCompleted(currentSession)) {
+                    closeIdle();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Acquires a class loader over the specified classpath, whose directories
+     * are digested for the purpose of this lease only.
+     */
+    public static Lease acquire(List<String> classpathElements)
+            throws IOException {
+        return acquire(classpathElements, new DirectoryState(classpathElements));
+    }
+
+    /**
+     * Acquires a class loader over the specified classpath for an execution
+     * whose directories are in the specified state.
+     */
+    public static Lease acquire(List<String> classpathElements,
+                                DirectoryState directoryState)
+            throws IOException {
+        List<URL> jarUrls = new ArrayList<URL>();
+        List<URL> directoryUrls = new ArrayList<URL>();
+
+        for (String classpathElement : classpathElements) {
+            File file = new File(classpathElement);
+            if (file.isFile()) {
+                jarUrls.add(file.toURI().toURL());
+            } else {
+                directoryUrls.add(file.toURI().toURL());
+            }
+        }
+
+        Layer layer =
+                acquireLayer(
+                        digest(classpathElements),
+                        jarUrls.toArray(new URL[jarUrls.size()]),
+                        directoryState);
+
+        return new Lease(layer, layer.digest, new URLClassLoader(
+                directoryUrls.toArray(new URL[directoryUrls.size()]),
+                layer.classLoader), directoryState);
+    }
+
+    /**
+     * Creates a class loader over the specified classpath which is not shared
+     * with any other execution.
+     */
+    public static Lease createUnshared(List<String> classpathElements) {
+        return new Lease(
+                digest(classpathElements),
+                Util.createClassLoader(classpathElements));
+    }
+
+    /**
+     * Returns a digest identifying the jars of the specified classpath, from
+     * their path, size and last modification date.
+     */
+    public static String digest(List<String> classpathElements) {
+        MessageDigest digest = newDigest();
+
+        for (String classpathElement : classpathElements) {
+            File file = new File(classpathElement);
+            if (file.isFile()) {
+                digest.update(file.getAbsolutePath().getBytes(UTF_8));
+                digest.update(Long.toString(file.length()).getBytes(UTF_8));
+                digest.update(Long.toString(file.lastModified()).getBytes(
+                        UTF_8));
+            }
+        }
+
+        return Util.toHexString(digest.digest());
+    }
+
+    /**
+     * Returns digests identifying the classes of the specified directories,
+     * from the names, sizes and last modification dates of their class files.
+     */
+    static Map<String, String> digestDirectories(List<File> directories)
+            throws IOException {
+        Map<String, String> digests = new HashMap<String, String>();
+
+        for (File directory : directories) {
+            if (!directory.isDirectory()) {
+                continue;
+            }
+
+            MessageDigest digest = newDigest();
+            for (String fileName : DirectoryWalker.walk(directory)) {
+                if (!fileName.endsWith(".class")) {
+                    continue;
+                }
+
+                File file = new File(directory, fileName);
+                digest.update(fileName.getBytes(UTF_8));
+                digest.update(Long.toString(file.length()).getBytes(UTF_8));
+                digest.update(Long.toString(file.lastModified()).getBytes(
+                        UTF_8));
+            }
+            digests.put(
+                    directory.getAbsolutePath(),
+                    Util.toHexString(digest.digest()));
+        }
+
+        return digests;
+    }
+
+    private static synchronized Layer acquireLayer(String digest, URL[] urls,
+                                                   DirectoryState directoryState) {
+        Layer layer;
+        int copy = 0;
+
+        do {
+            String key = digest + "#" + copy++;
+            layer = layers.get(key);
+            if (layer != null && !layer.inUse
+                    && layer.isStale(directoryState)) {
+                layers.remove(key);
+                Util.closeQuietly(layer.classLoader);
+                layer = null;
+            }
+            if (layer == null) {
+                layer = new Layer(key, digest, new URLClassLoader(urls));
+                layers.put(key, layer);
+            }
+        } while (layer.inUse);
+        layer.inUse = true;
+
+        return layer;
+    }
+
+    private static synchronized void releaseLayer(Layer layer,
+                                                  DirectoryState directoryState) {
+        layer.inUse = false;
+        for (String directory : directoryState.getDigests().keySet()) {
+            layer.directoryStates.put(directory, directoryState);
+        }
+
+        int idle = 0;
+        for (Layer l : layers.values()) {
+            if (!l.inUse) {
+                idle++;
+            }
+        }
+
+        Iterator<Layer> it = layers.values().iterator();
+        while (idle > MAX_IDLE_LAYERS && it.hasNext()) {
+            Layer l = it.next();
+            if (!l.inUse) {
+                it.remove();
+                Util.closeQuietly(l.classLoader);
+                idle--;
+            }
+        }
+    }
+
+    /**
+     * Closes the shared class loaders which are no longer used.
+     */
+    public static synchronized void closeIdle() {
+        Iterator<Layer> it = layers.values().iterator();
+        while (it.hasNext()) {
+            Layer layer = it.next();
+            if (!layer.inUse) {
+                it.remove();
+                Util.closeQuietly(layer.classLoader);
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Layer {
+
+        private final String key;
+
+        private final String digest;
+
+        private final URLClassLoader classLoader;
+
+        // state of the executions which were the last to be served each
+        // directory, as updated by these executions once they end
+        private final Map<String, DirectoryState> directoryStates =
+                new HashMap<String, DirectoryState>();
+
+        private boolean inUse;
+
+        private Layer(String key, String digest, URLClassLoader classLoader) {
+            this.key = key;
+            this.digest = digest;
+            this.classLoader = classLoader;
+        }
+
+        /**
+         * Indicates whether one of the specified directories served by the
+         * layer has changed since.
+         */
+        private boolean isStale(DirectoryState directoryState) {
+            for (Map.Entry<String, String> entry : directoryState.getDigests()
+                    .entrySet()) {
+                DirectoryState previousState =
+                        this.directoryStates.get(entry.getKey());
+                if (previousState != null
+                        && previousState != directoryState
+                        && !entry.getValue().equals(
+                                previousState.getDigests().get(entry.getKey()))) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+    }
+
+    /**
+     * A class loader acquired from the cache. It must be closed once the
+     * class loader is no longer used.
+     */
+    public static class Lease implements Closeable {
+
+        private final Layer layer;
+
+        private final String digest;
+
+        private final URLClassLoader classLoader;
+
+        private final DirectoryState directoryState;
+
+        private boolean closed;
+
+        private Lease(String digest, URLClassLoader classLoader) {
+            this(null, digest, classLoader, null);
+        }
+
+        private Lease(Layer layer, String digest, URLClassLoader classLoader,
+                DirectoryState directoryState) {
+            this.layer = layer;
+            this.digest = digest;
+            this.classLoader = classLoader;
+            this.directoryState = directoryState;
+        }
+
+        public URLClassLoader getClassLoader() {
+            return this.classLoader;
+        }
+
+        /**
+         * Returns the digest of the jars loaded by the class loader.
+         */
+        public String getDigest() {
+            return this.digest;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+
+            try {
+                this.classLoader.close();
+            } finally {
+                if (this.layer != null) {
+                    releaseLayer(this.layer, this.directoryState);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Digests of the classes of the directories of a classpath, taken once
+     * for an execution and shared by all the class loaders it acquires. The
+     * execution updates the digests once it has written its classes, so that
+     * its own classes do not make the class loaders it releases stale. A
+     * class loader compares the digests of the next executions with the
+     * updated ones.
+     */
+    public static class DirectoryState {
+
+        private final List<File> directories = new ArrayList<File>();
+
+        private volatile Map<String, String> digests;
+
+        public DirectoryState(List<String> classpathElements)
+                throws IOException {
+            for (String classpathElement : classpathElements) {
+                File file = new File(classpathElement);
+                if (!file.isFile()) {
+                    this.directories.add(file);
+                }
+            }
+            this.update();
+        }
+
+        /**
+         * Digests the directories again.
+         */
+        public void update() throws IOException {
+            this.digests =
+                    Collections.unmodifiableMap(digestDirectories(this.directories));
+        }
+
+        Map<String, String> getDigests() {
+            return this.digests;
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * Destination of the generated classes.
+ *
+ * @author lpellegr
+ */
+public interface ClassOutput {
+
+    /**
+     * Outcome of the write of a class.
+     */
+    public static class Result {
+
+        private final String location;
+
+        private final boolean written;
+
+        public Result(String location, boolean written) {
+            this.location = location;
+            this.written = written;
+        }
+
+        public String getLocation() {
+            return this.location;
+        }
+
+        /**
+         * Indicates whether the class has been written or whether the output
+         * already had the same bytecode.
+         */
+        public boolean isWritten() {
+            return this.written;
+        }
+
+    }
+
+    /**
+     * Indicates whether the output contains the specified class.
+     */
+    boolean contains(String className);
+
+    /**
+     * Writes the bytecode of the specified class. The returned future may
+     * complete after this method returns.
+     */
+    Future<Result> submit(String className, byte[] data);
+
+    /**
+     * Writes a resource, such as an index of the generated classes, along
+     * with the classes. The resource is written, or at least recorded into
+     * the output, when this method returns.
+     */
+    Result writeResource(String resourceName, byte[] data) throws IOException;
+
+    /**
+     * Removes the specified class from the output and returns its former
+     * location, or {@code null} if the output did not contain it.
+     */
+    String delete(String className) throws IOException;
+
+    /**
+     * Completes the pending writes and releases the output.
+     */
+    void close() throws IOException, InterruptedException;
+
+}
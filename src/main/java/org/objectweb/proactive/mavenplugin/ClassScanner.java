@@ -0,0 +1,132 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads the headers of all the class files of a directory tree, annotations
+ * included. Class files are read and parsed concurrently and no class is
+ * loaded.
+ *
+ * @author lpellegr
+ */
+public class ClassScanner {
+
+    // number of class files read by a task
+    private static final int BATCH_SIZE = 256;
+
+    private ClassScanner() {
+    }
+
+    /**
+     * Returns the headers of the classes of the specified directory, sorted
+     * by class name. Module and package descriptors are ignored.
+     */
+    public static SortedMap<String, ClassFileHeader> scan(final File directory,
+                                                          int threads)
+            throws IOException {
+        SortedMap<String, ClassFileHeader> headers =
+                new TreeMap<String, ClassFileHeader>();
+        if (!directory.isDirectory()) {
+            return headers;
+        }
+
+        List<String> fileNames = new ArrayList<String>();
+        for (String fileName : DirectoryWalker.walk(directory)) {
+            if (fileName.endsWith(".class")
+                    && !fileName.endsWith("module-info.class")
+                    && !fileName.endsWith("package-info.class")) {
+                fileNames.add(fileName);
+            }
+        }
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "proactive-class-scanner");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        try {
+            List<Future<List<ClassFileHeader>>> futures =
+                    new ArrayList<Future<List<ClassFileHeader>>>();
+
+            for (int i = 0; i < fileNames.size(); i += BATCH_SIZE) {
+                final List<String> batch =
+                        fileNames.subList(
+                                i, Math.min(i + BATCH_SIZE, fileNames.size()));
+
+                futures.add(executor.submit(new Callable<List<ClassFileHeader>>() {
+                    @Override
+                    public List<ClassFileHeader> call() throws IOException {
+                        List<ClassFileHeader> result =
+                                new ArrayList<ClassFileHeader>(batch.size());
+
+                        for (String fileName : batch) {
+                            File file = new File(directory, fileName);
+                            try {
+                                result.add(ClassFileHeader.parse(
+                                        Files.readAllBytes(file.toPath()),
+                                        true));
+                            } catch (IOException ioe) {
+                                throw new IOException("Failed to read "
+                                        + file, ioe);
+                            }
+                        }
+
+                        return result;
+                    }
+                }));
+            }
+
+            for (Future<List<ClassFileHeader>> future : futures) {
+                for (ClassFileHeader header : future.get()) {
+                    headers.put(header.getClassName(), header);
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning " + directory, ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return headers;
+    }
+
+}
@@ -0,0 +1,337 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Index of the resources available on a classpath, associating each resource
+ * name with the classpath element providing it. Jars are indexed from their
+ * central directory only and directories are walked once, so that checking
+ * whether a class exists is a hash lookup which neither opens a jar nor
+ * defines a class.
+ *
+ * @author lpellegr
+ */
+public class ClasspathIndex {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private final Map<String, File> locations = new HashMap<String, File>();
+
+    private final List<File> elements = new ArrayList<File>();
+
+    /**
+     * Resources of the indexed jars, kept so that {@link #refresh()} does not
+     * read the unchanged jars again.
+     */
+    private final Map<File, JarResources> jars =
+            new HashMap<File, JarResources>();
+
+    public static ClasspathIndex build(List<String> classpathElements)
+            throws IOException {
+        ClasspathIndex index = new ClasspathIndex();
+
+        for (String classpathElement : classpathElements) {
+            index.add(new File(classpathElement));
+        }
+
+        return index;
+    }
+
+    /**
+     * Adds the resources of the specified classpath element to the index.
+     * Resources already provided by a previous element are not overridden, as
+     * with a class loader.
+     */
+    public void add(File element) throws IOException {
+        if (this.elements.contains(element)) {
+            return;
+        }
+        this.elements.add(element);
+
+        if (element.isDirectory()) {
+            this.addDirectory(element);
+        } else if (element.isFile()) {
+            this.addJar(element);
+        }
+    }
+
+    /**
+     * Returns a new index over the same classpath elements, in which the
+     * directories are walked again whereas the jars which have not changed
+     * since they were indexed keep their resources.
+     */
+    public ClasspathIndex refresh() throws IOException {
+        ClasspathIndex index = new ClasspathIndex();
+
+        for (File element : this.elements) {
+            JarResources jarResources = this.jars.get(element);
+            if (jarResources != null && jarResources.isCurrent(element)) {
+                index.elements.add(element);
+                index.addJarResources(element, jarResources);
+            } else {
+                index.add(element);
+            }
+        }
+
+        return index;
+    }
+
+    public boolean contains(File element) {
+        return this.elements.contains(element);
+    }
+
+    public boolean containsResource(String resourceName) {
+        return this.locations.containsKey(resourceName);
+    }
+
+    public boolean containsClass(String className) {
+        return this.locations.containsKey(toResourceName(className));
+    }
+
+    /**
+     * Returns the classpath element providing the specified resource or
+     * {@code null} if the resource is not on the classpath.
+     */
+    public File getLocation(String resourceName) {
+        return this.locations.get(resourceName);
+    }
+
+    /**
+     * Returns the names of the resources whose name ends with the specified
+     * suffix, grouped by the classpath element providing them. Elements are
+     * in classpath order and names are sorted.
+     */
+    public Map<File, List<String>> getResourceNames(String suffix) {
+        Map<File, List<String>> resourceNames =
+                new LinkedHashMap<File, List<String>>();
+        for (File element : this.elements) {
+            resourceNames.put(element, new ArrayList<String>());
+        }
+
+        for (Map.Entry<String, File> entry : this.locations.entrySet()) {
+            if (entry.getKey().endsWith(suffix)) {
+                resourceNames.get(entry.getValue()).add(entry.getKey());
+            }
+        }
+
+        for (List<String> names : resourceNames.values()) {
+            Collections.sort(names);
+        }
+
+        return resourceNames;
+    }
+
+    public static String toResourceName(String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    private void addResource(String resourceName, File element) {
+        if (!this.locations.containsKey(resourceName)) {
+            this.locations.put(resourceName, element);
+        }
+    }
+
+    private void addDirectory(File directory) throws IOException {
+        for (String resourceName : DirectoryWalker.walk(directory)) {
+            this.addResource(resourceName, directory);
+        }
+    }
+
+    private void addJar(File jar) throws IOException {
+        long lastModified = jar.lastModified();
+        long length = jar.length();
+        List<String> resourceNames = new ArrayList<String>();
+        FileChannel channel =
+                FileChannel.open(jar.toPath(), StandardOpenOption.READ);
+
+        try {
+            if (!readCentralDirectory(channel, resourceNames)) {
+                // zip64 or unusual archives are left to the JDK
+                resourceNames.clear();
+                readZipFile(jar, resourceNames);
+            }
+        } finally {
+            channel.close();
+        }
+
+        this.addJarResources(jar, new JarResources(
+                lastModified, length, resourceNames));
+    }
+
+    private void addJarResources(File jar, JarResources jarResources) {
+        this.jars.put(jar, jarResources);
+        for (String resourceName : jarResources.resourceNames) {
+            this.addResource(resourceName, jar);
+        }
+    }
+
+    /**
+     * Reads the entry names from the central directory of the specified jar.
+     * Only the end of the archive is read, the local entries and their
+     * content are never accessed.
+     */
+    private static boolean readCentralDirectory(FileChannel channel,
+                                                List<String> resourceNames)
+            throws IOException {
+        long size = channel.size();
+        if (size < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            return false;
+        }
+
+        int tailSize =
+                (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE
+                        + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(channel, size - tailSize, tailSize);
+
+        int end = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return false;
+        }
+
+        int entries = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if (entries == 0xFFFF || directoryOffset == 0xFFFFFFFFL
+                || directoryOffset + directorySize > size) {
+            return false;
+        }
+
+        ByteBuffer directory =
+                read(channel, directoryOffset, (int) directorySize);
+        byte[] name = new byte[256];
+        int position = 0;
+
+        for (int i = 0; i < entries; i++) {
+            if (position + CENTRAL_DIRECTORY_HEADER_SIZE > directorySize
+                    || directory.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                return false;
+            }
+
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+
+            if (nameLength > name.length) {
+                name = new byte[nameLength];
+            }
+            directory.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+            directory.get(name, 0, nameLength);
+
+            if (nameLength > 0 && name[nameLength - 1] != '/') {
+                resourceNames.add(new String(name, 0, nameLength, UTF_8));
+            }
+
+            position +=
+                    CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength
+                            + commentLength;
+        }
+
+        return true;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        return buffer;
+    }
+
+    private static void readZipFile(File jar, List<String> resourceNames)
+            throws IOException {
+        ZipFile zipFile = new ZipFile(jar);
+
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    resourceNames.add(entry.getName());
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Resources of a jar along with the size and modification date of the jar
+     * when they were read.
+     */
+    private static class JarResources {
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final List<String> resourceNames;
+
+        private JarResources(long lastModified, long length,
+                             List<String> resourceNames) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.resourceNames = resourceNames;
+        }
+
+        private boolean isCurrent(File jar) {
+            return jar.lastModified() == this.lastModified
+                    && jar.length() == this.length;
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.util.Map;
+
+/**
+ * Typed access to the ProActive/GCM component class generation, bound once to
+ * the classes of a project class loader.
+ *
+ * @author bsauvan
+ */
+public interface ComponentGeneratorAdapter {
+
+    String getMetaObjectClassName(String interfaceName,
+                                  String interfaceSignature) throws Exception;
+
+    String getRepresentativeClassName(String interfaceName,
+                                      String interfaceSignature)
+            throws Exception;
+
+    /**
+     * Returns the controller signatures, mapped to their implementation
+     * classes, declared by the specified controller configuration. A
+     * {@code null} location denotes the default configuration.
+     */
+    Map<String, String> getControllersSignatures(String controllersConfigFileLocation)
+            throws Exception;
+
+    /**
+     * Returns the name of the interface implemented by the specified
+     * controller implementation.
+     */
+    String getControllerInterfaceName(String implementationClassName)
+            throws Exception;
+
+    /**
+     * Generates the bytecode of the specified meta object or representative
+     * class.
+     */
+    byte[] generateClass(String className) throws Exception;
+
+}
@@ -0,0 +1,189 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Build-wide cache of the controller configurations resolved by
+ * {@link GcmMojo}: the controller signatures declared by a configuration file
+ * and the interface names of the controller implementations. Keys identify
+ * the jar or directory holding the configuration file or implementation
+ * class, and the content of the file or class when it lies in a directory, so
+ * that entries are shared by all the modules of a reactor depending on the
+ * same jar while edits are picked up. Entries are dropped when a new build
+ * session starts.
+ *
+ * @author bsauvan
+ */
+public class ControllerConfigurationCache {
+
+    private static final ConcurrentMap<String, Map<String, String>> controllersSignatures =
+            new ConcurrentHashMap<String, Map<String, String>>();
+
+    private static final ConcurrentMap<String, String> interfaceNames =
+            new ConcurrentHashMap<String, String>();
+
+    private static Object session;
+
+    private ControllerConfigurationCache() {
+    }
+
+    /**
+     * Returns the key identifying the specified controller configuration
+     * file, a {@code null} location denoting the default configuration
+     * packaged with ProActive.
+     */
+    public static String getConfigurationKey(Object currentSession,
+                                             ClasspathIndex classpathIndex,
+                                             ClassLoader classLoader,
+                                             String location)
+            throws IOException {
+        checkSession(currentSession);
+
+        if (location == null) {
+            File element =
+                    classpathIndex.getLocation(ClasspathIndex.toResourceName(ProActiveVersion.PAVERSION_CLASSNAME));
+            return (element == null ? "" : getElementKey(element))
+                    + ":default";
+        }
+
+        String resourceName =
+                location.startsWith("/") ? location.substring(1) : location;
+        File element = classpathIndex.getLocation(resourceName);
+        if (element != null && element.isFile()) {
+            return getElementKey(element) + ":" + resourceName;
+        }
+
+        byte[] content = readConfiguration(classLoader, location);
+
+        return (element == null ? "" : getElementKey(element)) + ":"
+                + location + ":"
+                + (content == null ? "missing" : hash(content));
+    }
+
+    public static Map<String, String> getControllersSignatures(String configurationKey) {
+        return controllersSignatures.get(configurationKey);
+    }
+
+    public static void putControllersSignatures(String configurationKey,
+                                                Map<String, String> signatures) {
+        controllersSignatures.put(
+                configurationKey,
+                Collections.unmodifiableMap(new LinkedHashMap<String, String>(
+                        signatures)));
+    }
+
+    /**
+     * Returns the key identifying the specified controller implementation
+     * class, or {@code null} if its bytecode cannot be found.
+     */
+    public static String getImplementationKey(Object currentSession,
+                                              ClasspathIndex classpathIndex,
+                                              ClassLoader classLoader,
+                                              String implementationClassName)
+            throws IOException {
+        checkSession(currentSession);
+
+        File element =
+                classpathIndex.getLocation(ClasspathIndex.toResourceName(implementationClassName));
+        if (element != null && element.isFile()) {
+            return getElementKey(element) + ":" + implementationClassName;
+        }
+
+        byte[] bytecode = Util.readClass(classLoader, implementationClassName);
+        if (bytecode == null) {
+            return null;
+        }
+
+        return (element == null ? "" : getElementKey(element)) + ":"
+                + implementationClassName + ":" + hash(bytecode);
+    }
+
+    public static String getInterfaceName(String implementationKey) {
+        return interfaceNames.get(implementationKey);
+    }
+
+    public static void putInterfaceName(String implementationKey,
+                                        String interfaceName) {
+        interfaceNames.put(implementationKey, interfaceName);
+    }
+
+    private static synchronized void checkSession(Object currentSession) {
+        if (session != currentSession) {
+            controllersSignatures.clear();
+            interfaceNames.clear();
+            session = currentSession;
+        }
+    }
+
+    /**
+     * Returns the key of the specified classpath element: jars are identified
+     * by their path, size and modification time, directories by their path.
+     */
+    private static String getElementKey(File element) {
+        if (element.isFile()) {
+            return element.getPath() + ":" + element.lastModified() + ":"
+                    + element.length();
+        }
+
+        return element.getPath();
+    }
+
+    private static byte[] readConfiguration(ClassLoader classLoader,
+                                            String location)
+            throws IOException {
+        String resourceName =
+                location.startsWith("/") ? location.substring(1) : location;
+        URL url = classLoader.getResource(resourceName);
+
+        if (url == null) {
+            File file = new File(location);
+            if (!file.isFile()) {
+                return null;
+            }
+            url = file.toURI().toURL();
+        }
+
+        InputStream in = Util.openStream(url);
+        try {
+            return Util.readFully(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            return Util.toHexString(MessageDigest.getInstance("SHA-1")
+                    .digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
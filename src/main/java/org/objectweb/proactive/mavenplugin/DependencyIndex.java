@@ -0,0 +1,434 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent dependency graph of the generated classes. Each generated class
+ * is associated with the types its bytecode depends on: its source classes,
+ * their super classes and interfaces, and the types of their method
+ * signatures. The state of each of these types (location, size, date and
+ * content hash) is recorded, so that the types changed since the previous
+ * build, and thus the classes to regenerate, can be determined without
+ * hashing the unchanged types.
+ *
+ * @author lpellegr
+ */
+public class DependencyIndex {
+
+    private static final int MAGIC = 0x50414649;
+
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * State of a type at the time a generated class has been recorded.
+     */
+    public static class TypeState {
+
+        private final String location;
+
+        private final long lastModified;
+
+        private final long size;
+
+        private final long hash;
+
+        public TypeState(String location, long lastModified, long size,
+                long hash) {
+            this.location = location;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        /**
+         * Returns the classpath element containing the type.
+         */
+        public String getLocation() {
+            return this.location;
+        }
+
+        public long getLastModified() {
+            return this.lastModified;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        public long getHash() {
+            return this.hash;
+        }
+
+        /**
+         * Indicates whether the type may have changed since this state was
+         * taken, without hashing its content.
+         */
+        public boolean isSameFile(String location, long lastModified,
+                                  long size) {
+            return this.location.equals(location)
+                    && this.lastModified == lastModified && this.size == size;
+        }
+
+    }
+
+    private String proactiveVersion;
+
+    private final Map<String, List<String>> dependencies =
+            new LinkedHashMap<String, List<String>>();
+
+    private final Map<String, TypeState> typeStates =
+            new HashMap<String, TypeState>();
+
+    public DependencyIndex(String proactiveVersion) {
+        this.proactiveVersion = proactiveVersion;
+    }
+
+    /**
+     * Returns the ProActive version used to generate the classes.
+     */
+    public String getProActiveVersion() {
+        return this.proactiveVersion;
+    }
+
+    public boolean contains(String className) {
+        return this.dependencies.containsKey(className);
+    }
+
+    public Set<String> getClassNames() {
+        return this.dependencies.keySet();
+    }
+
+    public List<String> getDependencies(String className) {
+        return this.dependencies.get(className);
+    }
+
+    public Set<String> getTypeNames() {
+        return this.typeStates.keySet();
+    }
+
+    /**
+     * Returns the recorded state of the specified type, or {@code null} if
+     * the type could not be found when it was recorded.
+     */
+    public TypeState getTypeState(String typeName) {
+        return this.typeStates.get(typeName);
+    }
+
+    /**
+     * Records a generated class with the types it depends on and their
+     * current state.
+     */
+    public void put(String className, List<String> dependencies,
+                    Map<String, TypeState> typeStates) {
+        this.dependencies.put(className, dependencies);
+
+        for (String typeName : dependencies) {
+            this.typeStates.put(typeName, typeStates.get(typeName));
+        }
+    }
+
+    /**
+     * Returns the generated classes depending on at least one of the
+     * specified types.
+     */
+    public Set<String> getDependents(Set<String> typeNames) {
+        Set<String> dependents = new LinkedHashSet<String>();
+
+        if (typeNames.isEmpty()) {
+            return dependents;
+        }
+
+        for (Map.Entry<String, List<String>> entry : this.dependencies.entrySet()) {
+            for (String typeName : entry.getValue()) {
+                if (typeNames.contains(typeName)) {
+                    dependents.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+
+        return dependents;
+    }
+
+    /**
+     * Returns the generated classes recorded by the index which are not among
+     * the specified classes, hence no longer have a source.
+     */
+    public Set<String> getStaleClassNames(Collection<String> classNames) {
+        Set<String> currentClassNames = new HashSet<String>(classNames);
+        Set<String> staleClassNames = new LinkedHashSet<String>();
+
+        for (String className : this.dependencies.keySet()) {
+            if (!currentClassNames.contains(className)) {
+                staleClassNames.add(className);
+            }
+        }
+
+        return staleClassNames;
+    }
+
+    /**
+     * Loads the index stored in the specified file. An empty index is returned
+     * if the file does not exist or cannot be read.
+     */
+    public static DependencyIndex load(File file) {
+        DependencyIndex index = new DependencyIndex(null);
+
+        if (!file.isFile()) {
+            return index;
+        }
+
+        DataInputStream in = null;
+        try {
+            in =
+                    new DataInputStream(new BufferedInputStream(
+                            new FileInputStream(file)));
+
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return index;
+            }
+
+            if (in.readBoolean()) {
+                index.proactiveVersion = in.readUTF();
+            }
+
+            int typesCount = in.readInt();
+            String[] typeNames = new String[typesCount];
+            for (int i = 0; i < typesCount; i++) {
+                typeNames[i] = in.readUTF();
+                TypeState typeState = null;
+                if (in.readBoolean()) {
+                    typeState =
+                            new TypeState(
+                                    in.readUTF(), in.readLong(), in.readLong(),
+                                    in.readLong());
+                }
+                index.typeStates.put(typeNames[i], typeState);
+            }
+
+            int classesCount = in.readInt();
+            for (int i = 0; i < classesCount; i++) {
+                String className = in.readUTF();
+                int dependenciesCount = in.readInt();
+                List<String> dependencies =
+                        new ArrayList<String>(dependenciesCount);
+                for (int j = 0; j < dependenciesCount; j++) {
+                    dependencies.add(typeNames[in.readInt()]);
+                }
+                index.dependencies.put(className, dependencies);
+            }
+        } catch (IOException ioe) {
+            // a corrupted index only means that everything is regenerated
+            index.dependencies.clear();
+            index.typeStates.clear();
+        } catch (RuntimeException re) {
+            index.dependencies.clear();
+            index.typeStates.clear();
+        } finally {
+            Util.closeQuietly(in);
+        }
+
+        return index;
+    }
+
+    /**
+     * Stores the index into the specified file. The file is replaced
+     * atomically so that an interrupted build never leaves a truncated index.
+     */
+    public void save(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        File tmpFile = new File(file.getPath() + ".tmp");
+
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeBoolean(this.proactiveVersion != null);
+            if (this.proactiveVersion != null) {
+                out.writeUTF(this.proactiveVersion);
+            }
+
+            // types are written once and referenced by their position
+            Map<String, Integer> typeIndexes = new HashMap<String, Integer>();
+            out.writeInt(this.typeStates.size());
+            for (Map.Entry<String, TypeState> entry : this.typeStates.entrySet()) {
+                typeIndexes.put(entry.getKey(), typeIndexes.size());
+                out.writeUTF(entry.getKey());
+
+                TypeState typeState = entry.getValue();
+                out.writeBoolean(typeState != null);
+                if (typeState != null) {
+                    out.writeUTF(typeState.getLocation());
+                    out.writeLong(typeState.getLastModified());
+                    out.writeLong(typeState.getSize());
+                    out.writeLong(typeState.getHash());
+                }
+            }
+
+            out.writeInt(this.dependencies.size());
+            for (Map.Entry<String, List<String>> entry : this.dependencies.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String typeName : entry.getValue()) {
+                    out.writeInt(typeIndexes.get(typeName));
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        Files.move(
+                tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns the types a class generated from the specified source classes
+     * depends on: the source classes, their super types and the types of
+     * their method signatures. Platform types are ignored. Returns
+     * {@code null} if the bytecode of a source class cannot be found.
+     */
+    public static List<String> computeDependencies(ClassLoader classLoader,
+                                                   Collection<String> sourceClassNames)
+            throws IOException {
+        Set<String> dependencies = new LinkedHashSet<String>();
+        Set<String> superTypeNames = new HashSet<String>(sourceClassNames);
+        LinkedList<String> pending = new LinkedList<String>(sourceClassNames);
+
+        while (!pending.isEmpty()) {
+            String typeName = pending.removeFirst();
+            if (isPlatformType(typeName)) {
+                continue;
+            }
+            dependencies.add(typeName);
+
+            byte[] bytecode = Util.readClass(classLoader, typeName);
+            if (bytecode == null) {
+                if (sourceClassNames.contains(typeName)) {
+                    return null;
+                }
+                continue;
+            }
+
+            ClassFileHeader header = ClassFileHeader.parse(bytecode, true);
+            List<String> typeNames =
+                    new ArrayList<String>(header.getInterfaceNames());
+            if (header.getSuperClassName() != null) {
+                typeNames.add(header.getSuperClassName());
+            }
+
+            // the hierarchy of super types is followed, whereas the types of
+            // the signatures only matter by themselves
+            for (String superTypeName : typeNames) {
+                if (superTypeNames.add(superTypeName)) {
+                    pending.add(superTypeName);
+                }
+            }
+            for (String signatureTypeName : header.getSignatureTypeNames()) {
+                if (!isPlatformType(signatureTypeName)) {
+                    dependencies.add(signatureTypeName);
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(new ArrayList<String>(dependencies));
+    }
+
+    /**
+     * Computes the current state of the specified type. The recorded state is
+     * reused, without reading the type, if the file containing the type did
+     * not change. Returns {@code null} if the type cannot be found.
+     */
+    public static TypeState computeTypeState(ClasspathIndex classpathIndex,
+                                             ClassLoader classLoader,
+                                             String typeName,
+                                             TypeState previousState)
+            throws IOException {
+        String resourceName = ClasspathIndex.toResourceName(typeName);
+        File element = classpathIndex.getLocation(resourceName);
+        if (element == null) {
+            return null;
+        }
+
+        // the date and size of a jar stand for those of all its entries
+        File file =
+                element.isDirectory()
+                        ? new File(element, resourceName) : element;
+        String location = element.getPath();
+        long lastModified = file.lastModified();
+        long size = file.length();
+
+        if (previousState != null
+                && previousState.isSameFile(location, lastModified, size)) {
+            return previousState;
+        }
+
+        byte[] bytecode = Util.readClass(classLoader, typeName);
+        if (bytecode == null) {
+            return null;
+        }
+
+        return new TypeState(location, lastModified, size, hash(bytecode));
+    }
+
+    private static boolean isPlatformType(String typeName) {
+        return typeName.startsWith("java.") || typeName.startsWith("javax.");
+    }
+
+    private static long hash(byte[] bytecode) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-1").digest(bytecode);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (hash[i] & 0xFF);
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lists the files of a directory tree, the sub-directories being traversed in
+ * parallel.
+ *
+ * @author lpellegr
+ */
+public class DirectoryWalker {
+
+    // shared by all the walks, its threads are daemon threads
+    private static final ForkJoinPool pool =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private DirectoryWalker() {
+    }
+
+    /**
+     * Returns the names, relative to the specified directory and separated by
+     * {@code /}, of all the regular files of the tree.
+     */
+    public static List<String> walk(File directory) throws IOException {
+        try {
+            return pool.invoke(new WalkTask(directory.toPath(), ""));
+        } catch (WalkException we) {
+            throw we.getCause();
+        }
+    }
+
+    private static class WalkTask extends RecursiveTask<List<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        private final String prefix;
+
+        private WalkTask(Path directory, String prefix) {
+            this.directory = directory;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> fileNames = new ArrayList<String>();
+            List<WalkTask> subTasks = new ArrayList<WalkTask>();
+
+            try {
+                DirectoryStream<Path> stream =
+                        Files.newDirectoryStream(this.directory);
+                try {
+                    for (Path path : stream) {
+                        BasicFileAttributes attributes =
+                                Files.readAttributes(
+                                        path, BasicFileAttributes.class,
+                                        LinkOption.NOFOLLOW_LINKS);
+                        String name =
+                                this.prefix + path.getFileName().toString();
+
+                        if (attributes.isDirectory()) {
+                            WalkTask subTask = new WalkTask(path, name + "/");
+                            subTask.fork();
+                            subTasks.add(subTask);
+                        } else if (attributes.isRegularFile()) {
+                            fileNames.add(name);
+                        }
+                    }
+                } finally {
+                    stream.close();
+                }
+            } catch (IOException ioe) {
+                throw new WalkException(ioe);
+            }
+
+            for (WalkTask subTask : subTasks) {
+                fileNames.addAll(subTask.join());
+            }
+
+            return fileNames;
+        }
+
+    }
+
+    private static class WalkException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private WalkException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+
+    }
+
+}
@@ -17,17 +17,16 @@
 package org.objectweb.proactive.mavenplugin;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FileReader;
-import java.io.Reader;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamReader;
+import java.util.Set;
 
 import org.apache.maven.plugin.MojoExecutionException;
 
@@ -36,29 +35,13 @@ import org.apache.maven.plugin.MojoExecutionException;
  * (representatives of component interfaces).
  * 
  * @goal gcm
+ * @threadSafe
  * 
  * @author bsauvan
  */
 public class GcmMojo extends AbstractClassGeneratorMojo {
 
-    private static final String UTILS_CLASSNAME =
-            "org.objectweb.proactive.core.component.gen.Utils";
-
-    private static final String COMPONENT_CLASSNAME =
-            "org.objectweb.fractal.api.Component";
-
-    private static final String CONTROLLER_DESCRIPTION_CLASSNAME =
-            "org.objectweb.proactive.core.component.ControllerDescription";
-
-    private static final String INTERFACE_ELEMENT = "interface";
-
-    private static final String NAME_ATTRIBUTE = "name";
-
-    private static final String SIGNATURE_ATTRIBUTE = "signature";
-
-    private static final String CONTROLLER_ELEMENT = "controller";
-
-    private static final String DESC_ATTRIBUTE = "desc";
+    private static final String ADL_EXTENSION = ".fractal";
 
     /**
      * Directory tree where the compiled remote classes are located.
@@ -68,43 +51,51 @@ public class GcmMojo extends AbstractClassGeneratorMojo {
      */
     private File classesDirectory;
 
-    private Class<?> componentClass;
+    /**
+     * Patterns of the ADL files to process, relative to the classes directory
+     * or to the root of the dependency jars. All the {@code .fractal} files
+     * are processed by default.
+     * 
+     * @parameter
+     */
+    private List<String> adlIncludes;
 
-    private Constructor<?> controllerDescriptionConstructor;
+    /**
+     * Patterns of the ADL files not to process.
+     * 
+     * @parameter
+     */
+    private List<String> adlExcludes;
 
-    private Method getControllersSignaturesMethod;
+    /**
+     * Indicates whether the ADL files packaged in the dependencies of the
+     * module are processed, in addition to those of the classes directory.
+     * 
+     * @parameter expression="${proactive.scanDependencies}" default-value="false"
+     */
+    private boolean scanDependencies;
 
-    private Method getMetaObjectClassNameMethod;
+    private ComponentGeneratorAdapter adapter;
 
-    private Method getMetaObjectComponentRepresentativeClassNameMethod;
+    private Set<String> classNames;
 
-    private Method getClassDataMethod;
+    private Map<String, String> interfaceSignatures;
 
-    private List<String> classNames;
+    /**
+     * Declarations of the ADL files parsed by the previous execution, keyed
+     * by the location, size and modification date of the files. The watch
+     * goal executes the same mojo on each change, the unchanged files are
+     * therefore not parsed again.
+     */
+    private Map<String, List<AdlParser.Declaration>> parsedAdlFiles =
+            new HashMap<String, List<AdlParser.Declaration>>();
 
     protected void init() throws MojoExecutionException {
         try {
-            this.componentClass =
-                    this.classLoader.loadClass(COMPONENT_CLASSNAME);
-            Class<?> controllerDescriptionClass =
-                    this.classLoader.loadClass(CONTROLLER_DESCRIPTION_CLASSNAME);
-            this.controllerDescriptionConstructor =
-                    controllerDescriptionClass.getConstructor(
-                            String.class, String.class, String.class);
-            this.getControllersSignaturesMethod =
-                    controllerDescriptionClass.getMethod("getControllersSignatures");
-            Class<?> utilsClass = this.classLoader.loadClass(UTILS_CLASSNAME);
-            this.getMetaObjectClassNameMethod =
-                    utilsClass.getMethod(
-                            "getMetaObjectClassName", String.class,
-                            String.class);
-            this.getMetaObjectComponentRepresentativeClassNameMethod =
-                    utilsClass.getMethod(
-                            "getMetaObjectComponentRepresentativeClassName",
-                            String.class, String.class);
-            this.getClassDataMethod =
-                    utilsClass.getMethod("getClassData", String.class);
-            this.classNames = new ArrayList<String>();
+            this.adapter =
+                    ProActiveAdapters.bindComponentGenerator(this.classLoader);
+            this.classNames = new LinkedHashSet<String>();
+            this.interfaceSignatures = new HashMap<String, String>();
         } catch (ClassNotFoundException cnfe) {
             throw new MojoExecutionException(
                     "ProActive Programming is not a dependency or a transitive dependency of the current module");
@@ -113,54 +104,54 @@ public class GcmMojo extends AbstractClassGeneratorMojo {
         }
     }
 
+    protected Set<File> getWatchedDirectories() {
+        Set<File> directories = super.getWatchedDirectories();
+        directories.add(this.classesDirectory);
+
+        return directories;
+    }
+
+    protected void releaseExecutionState() {
+        this.adapter = null;
+        this.classNames = null;
+        this.interfaceSignatures = null;
+    }
+
     protected List<String> getClassNames() throws MojoExecutionException {
         try {
-            // gets all fractal files
-            final ArrayList<File> fractalFiles = new ArrayList<File>();
-            this.classesDirectory.listFiles(new FileFilter() {
-                @Override
-                public boolean accept(final File pathname) {
-                    if (pathname.isDirectory()) {
-                        pathname.listFiles(this);
-                    }
-                    if (pathname.getName().endsWith(".fractal")) {
-                        fractalFiles.add(pathname);
-                    }
-                    return false;
-                }
-            });
-
-            // parses all fractal files
-            XMLInputFactory factory = XMLInputFactory.newInstance();
+            Map<URL, String> adlFiles = this.getAdlFiles();
 
             // adds meta object controller classnames for default controllers
             this.addControllerClassNames(null);
 
-            for (File fractalFile : fractalFiles) {
-                Reader reader = new FileReader(fractalFile);
-                XMLStreamReader streamReader =
-                        factory.createXMLStreamReader(reader);
-
-                while (streamReader.hasNext()) {
-                    int code = streamReader.next();
-
-                    if (code == XMLStreamReader.START_ELEMENT) {
-                        String elementName = streamReader.getLocalName();
-
-                        if (elementName.equals(INTERFACE_ELEMENT)) {
-                            String name =
-                                    streamReader.getAttributeValue(
-                                            null, NAME_ATTRIBUTE);
-                            String signature =
-                                    streamReader.getAttributeValue(
-                                            null, SIGNATURE_ATTRIBUTE);
+            // parses the fractal files which have changed since the previous
+            // execution, if any
+            List<URL> changedAdlUrls = new ArrayList<URL>();
+            for (Map.Entry<URL, String> entry : adlFiles.entrySet()) {
+                if (!this.parsedAdlFiles.containsKey(entry.getValue())) {
+                    changedAdlUrls.add(entry.getKey());
+                }
+            }
+            Map<String, List<AdlParser.Declaration>> parsedAdlFiles =
+                    new HashMap<String, List<AdlParser.Declaration>>();
+            AdlParser.Declarations declarations =
+                    new AdlParser(this.getDiscoveryThreads()).parse(changedAdlUrls);
+            try {
+                for (String adlKey : adlFiles.values()) {
+                    List<AdlParser.Declaration> fileDeclarations =
+                            this.parsedAdlFiles.get(adlKey);
+                    if (fileDeclarations == null) {
+                        fileDeclarations = declarations.next();
+                    }
+                    parsedAdlFiles.put(adlKey, fileDeclarations);
 
+                    for (AdlParser.Declaration declaration : fileDeclarations) {
+                        if (declaration.isInterface()) {
                             this.addMetaObjectAndRepresentativeClassName(
-                                    name, signature);
-                        } else if (elementName.equals(CONTROLLER_ELEMENT)) {
-                            String desc =
-                                    streamReader.getAttributeValue(
-                                            null, DESC_ATTRIBUTE);
+                                    declaration.getInterfaceName(),
+                                    declaration.getInterfaceSignature());
+                        } else {
+                            String desc = declaration.getControllerDesc();
                             if (!desc.equals("primitive")
                                     && !desc.equals("composite")) {
                                 this.addControllerClassNames(desc);
@@ -168,37 +159,79 @@ public class GcmMojo extends AbstractClassGeneratorMojo {
                         }
                     }
                 }
+            } finally {
+                declarations.close();
             }
+            this.parsedAdlFiles = parsedAdlFiles;
 
-            return this.classNames;
+            return new ArrayList<String>(this.classNames);
         } catch (Exception e) {
             throw new MojoExecutionException(e.getMessage(), e);
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Returns the locations of the ADL files to process, those of the classes
+     * directory and, if enabled, those packaged in the dependencies, mapped
+     * to the keys of their current content.
+     */
+    private Map<URL, String> getAdlFiles() throws IOException {
+        if (!this.classpathIndex.contains(this.classesDirectory)) {
+            this.classpathIndex.add(this.classesDirectory);
+        }
+
+        List<String> includes = this.adlIncludes;
+        if (includes == null || includes.isEmpty()) {
+            includes = Collections.singletonList("**/*" + ADL_EXTENSION);
+        }
+        ResourcePatterns patterns =
+                new ResourcePatterns(includes, this.adlExcludes);
+
+        Map<URL, String> adlFiles = new LinkedHashMap<URL, String>();
+        for (Map.Entry<File, List<String>> entry : this.classpathIndex.getResourceNames(
+                ADL_EXTENSION).entrySet()) {
+            File element = entry.getKey();
+            boolean jar = element.isFile();
+
+            if (!element.equals(this.classesDirectory)
+                    && !(jar && this.scanDependencies)) {
+                continue;
+            }
+
+            for (String resourceName : entry.getValue()) {
+                if (!patterns.matches(resourceName)) {
+                    continue;
+                }
+
+                URL adlUrl;
+                File source;
+                if (jar) {
+                    adlUrl =
+                            new URL("jar:" + element.toURI() + "!/"
+                                    + resourceName);
+                    source = element;
+                } else {
+                    source = new File(element, resourceName);
+                    adlUrl = source.toURI().toURL();
+                }
+                adlFiles.put(adlUrl, adlUrl + ":" + source.lastModified()
+                        + ":" + source.length());
+            }
+        }
+
+        return adlFiles;
+    }
+
     private void addControllerClassNames(String controllersConfigFileLocation)
             throws Exception {
-        Object controllerDescription =
-                this.controllerDescriptionConstructor.newInstance(
-                        null, null, controllersConfigFileLocation);
         Map<String, String> controllersSignatures =
-                (Map<String, String>) this.getControllersSignaturesMethod.invoke(controllerDescription);
+                this.getControllersSignatures(controllersConfigFileLocation);
 
-        for (String interfaceSignature : controllersSignatures.keySet()) {
+        for (Map.Entry<String, String> entry : controllersSignatures.entrySet()) {
+            String interfaceSignature = entry.getKey();
             try {
-                String interfaceImplementation =
-                        controllersSignatures.get(interfaceSignature);
-                Class<?> interfaceImplementationClass =
-                        this.classLoader.loadClass(interfaceImplementation);
-                Constructor<?> interfaceImplementationConstructor =
-                        interfaceImplementationClass.getConstructor(this.componentClass);
-                Object controllerInstance =
-                        interfaceImplementationConstructor.newInstance((Object) null);
-                Method getFcItfNameMethod =
-                        controllerInstance.getClass().getMethod("getFcItfName");
                 String interfaceName =
-                        (String) getFcItfNameMethod.invoke(controllerInstance);
+                        this.getControllerInterfaceName(entry.getValue());
 
                 this.addMetaObjectAndRepresentativeClassName(
                         interfaceName, interfaceSignature);
@@ -213,32 +246,116 @@ public class GcmMojo extends AbstractClassGeneratorMojo {
         }
     }
 
+    /**
+     * Returns the controller signatures declared by the specified controller
+     * configuration, resolved once per build for a given configuration file
+     * content.
+     */
+    private Map<String, String> getControllersSignatures(String controllersConfigFileLocation)
+            throws Exception {
+        String configurationKey =
+                ControllerConfigurationCache.getConfigurationKey(
+                        this.session, this.classpathIndex, this.classLoader,
+                        controllersConfigFileLocation);
+        Map<String, String> controllersSignatures =
+                ControllerConfigurationCache.getControllersSignatures(configurationKey);
+
+        if (controllersSignatures == null) {
+            controllersSignatures =
+                    this.adapter.getControllersSignatures(controllersConfigFileLocation);
+            ControllerConfigurationCache.putControllersSignatures(
+                    configurationKey, controllersSignatures);
+        }
+
+        return controllersSignatures;
+    }
+
+    /**
+     * Returns the name of the interface implemented by the specified
+     * controller, resolved once per build for a given implementation class.
+     */
+    private String getControllerInterfaceName(String interfaceImplementation)
+            throws Exception {
+        String implementationKey =
+                ControllerConfigurationCache.getImplementationKey(
+                        this.session, this.classpathIndex, this.classLoader,
+                        interfaceImplementation);
+        String interfaceName = null;
+        if (implementationKey != null) {
+            interfaceName =
+                    ControllerConfigurationCache.getInterfaceName(implementationKey);
+        }
+
+        if (interfaceName == null) {
+            interfaceName =
+                    this.adapter.getControllerInterfaceName(interfaceImplementation);
+
+            if (implementationKey != null) {
+                ControllerConfigurationCache.putInterfaceName(
+                        implementationKey, interfaceName);
+            }
+        }
+
+        return interfaceName;
+    }
+
     private void addMetaObjectAndRepresentativeClassName(String interfaceName,
                                                          String interfaceSignature)
             throws Exception {
         String metaObjectClassName =
-                (String) this.getMetaObjectClassNameMethod.invoke(
-                        null, interfaceName, interfaceSignature);
+                this.adapter.getMetaObjectClassName(
+                        interfaceName, interfaceSignature);
 
-        if (!this.classNames.contains(metaObjectClassName)) {
-            this.classNames.add(metaObjectClassName);
+        if (this.classNames.add(metaObjectClassName)) {
+            this.interfaceSignatures.put(
+                    metaObjectClassName, interfaceSignature);
         }
 
         String representativeClassName =
-                (String) this.getMetaObjectComponentRepresentativeClassNameMethod.invoke(
-                        null, interfaceName, interfaceSignature);
+                this.adapter.getRepresentativeClassName(
+                        interfaceName, interfaceSignature);
 
-        if (!this.classNames.contains(representativeClassName)) {
-            this.classNames.add(representativeClassName);
+        if (this.classNames.add(representativeClassName)) {
+            this.interfaceSignatures.put(
+                    representativeClassName, interfaceSignature);
         }
     }
 
-    protected byte[] generateClass(String className) throws Exception {
-        return (byte[]) this.getClassDataMethod.invoke(null, className);
+    protected List<String> getSourceClassNames(String className) {
+        return Collections.singletonList(this.interfaceSignatures.get(className));
+    }
+
+    protected ClassGeneratorPool.Factory getGeneratorFactory() {
+        return new GeneratorFactory();
+    }
+
+    /**
+     * Creates the generators of the component classes.
+     */
+    public static class GeneratorFactory implements ClassGeneratorPool.Factory {
+
+        @Override
+        public ClassGenerator createGenerator(ClassLoader classLoader)
+                throws Exception {
+            final ComponentGeneratorAdapter adapter =
+                    ProActiveAdapters.bindComponentGenerator(classLoader);
+
+            return new ClassGenerator() {
+                @Override
+                public byte[] generateClass(String className) throws Exception {
+                    return adapter.generateClass(className);
+                }
+            };
+        }
+
     }
 
     protected String getKind() {
         return "ProActive/GCM class";
     }
 
+    protected String getGoal() {
+        return "gcm";
+    }
+
 }
@@ -0,0 +1,260 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content-addressed cache of generated classes shared by all the builds of a
+ * machine. An entry is keyed by the kind of the generated class, its name,
+ * the ProActive version and the bytecode of its source classes and of their
+ * whole type hierarchy. Entries are written atomically, so that concurrent
+ * builds never read a partial entry, and the least recently used entries are
+ * evicted once the cache exceeds its maximum size.
+ *
+ * @author lpellegr
+ */
+public class GeneratedClassCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LOCK_FILE_NAME = ".lock";
+
+    /**
+     * Age after which a temporary file is deemed left by a build which was
+     * killed while writing an entry.
+     */
+    private static final long TMP_FILE_MAX_AGE = TimeUnit.HOURS.toMillis(1);
+
+    private final File directory;
+
+    private final long maxSize;
+
+    private volatile boolean modified;
+
+    public GeneratedClassCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the bytecode stored for the specified key or {@code null}.
+     */
+    public byte[] get(String key) {
+        Path path = this.getPath(key);
+
+        try {
+            byte[] data = Files.readAllBytes(path);
+            // the modification date is used as the last access date
+            path.toFile().setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    public void put(String key, byte[] data) throws IOException {
+        Path path = this.getPath(key);
+        Files.createDirectories(path.getParent());
+
+        Path tmpPath =
+                Files.createTempFile(
+                        path.getParent(), path.getFileName().toString(),
+                        ".tmp");
+        try {
+            OutputStream out = Files.newOutputStream(tmpPath);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+
+            try {
+                Files.move(
+                        tmpPath, path, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+
+        this.modified = true;
+    }
+
+    private Path getPath(String key) {
+        return new File(new File(this.directory, key.substring(0, 2)),
+                key.substring(2) + ".class").toPath();
+    }
+
+    /**
+     * Evicts the least recently used entries if the cache exceeds its maximum
+     * size. Eviction is skipped if another build is already evicting entries.
+     */
+    public void evict() throws IOException {
+        if (!this.modified) {
+            return;
+        }
+        this.modified = false;
+
+        Files.createDirectories(this.directory.toPath());
+        FileChannel channel =
+                FileChannel.open(
+                        new File(this.directory, LOCK_FILE_NAME).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return;
+            }
+
+            try {
+                this.evictEntries();
+            } finally {
+                lock.release();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void evictEntries() {
+        List<File> entries = new ArrayList<File>();
+        long size = 0;
+
+        File[] subDirectories = this.directory.listFiles();
+        if (subDirectories == null) {
+            return;
+        }
+        long tmpFileDate = System.currentTimeMillis() - TMP_FILE_MAX_AGE;
+        for (File subDirectory : subDirectories) {
+            File[] files = subDirectory.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.getName().endsWith(".class")) {
+                    entries.add(file);
+                    size += file.length();
+                } else if (file.getName().endsWith(".tmp")
+                        && file.lastModified() < tmpFileDate) {
+                    // the temporary files of the running builds are younger
+                    file.delete();
+                }
+            }
+        }
+
+        if (size <= this.maxSize) {
+            return;
+        }
+
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        // evicts down to 90% of the maximum size to avoid evicting on every build
+        long targetSize = this.maxSize / 10 * 9;
+        for (File entry : entries) {
+            if (size <= targetSize) {
+                break;
+            }
+            long length = entry.length();
+            if (entry.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Computes the key of a generated class from the types it depends on, as
+     * returned by {@link DependencyIndex#computeDependencies}. Returns
+     * {@code null} if the dependencies or the version of ProActive are
+     * unknown, in which case the class must not be cached.
+     */
+    public static String computeKey(ClassLoader classLoader, String kind,
+                                    String proactiveVersion,
+                                    String className,
+                                    List<String> dependencies)
+            throws IOException {
+        if (dependencies == null || proactiveVersion == null) {
+            return null;
+        }
+
+        MessageDigest digest = newDigest();
+        update(digest, kind);
+        update(digest, proactiveVersion);
+        update(digest, className);
+
+        for (String typeName : dependencies) {
+            update(digest, typeName);
+            if (isPlatformType(typeName)) {
+                continue;
+            }
+
+            byte[] bytecode = Util.readClass(classLoader, typeName);
+            if (bytecode == null) {
+                // the absence of a type is part of the state as well
+                digest.update((byte) 0);
+            } else {
+                digest.update(bytecode);
+            }
+        }
+
+        return Util.toHexString(digest.digest());
+    }
+
+    private static boolean isPlatformType(String typeName) {
+        return typeName.startsWith("java.") || typeName.startsWith("javax.");
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MavenPluginManager;
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.PluginConfigurationException;
+import org.apache.maven.plugin.PluginContainerException;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.descriptor.Parameter;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.configuration.PlexusConfiguration;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Configures the generation goals on behalf of the goals driving them, such
+ * as the watch and aggregate goals, as they would be configured by the POM
+ * of a module.
+ *
+ * @author lpellegr
+ */
+public class GenerationGoals {
+
+    /**
+     * Goals generating classes.
+     */
+    public static final List<String> GOALS = Arrays.asList("stubs", "gcm");
+
+    private GenerationGoals() {
+    }
+
+    /**
+     * Parses a comma separated list of generation goals.
+     */
+    public static List<String> parse(String goals)
+            throws MojoExecutionException {
+        List<String> result = new ArrayList<String>();
+
+        for (String goal : goals.split(",")) {
+            goal = goal.trim();
+            if (!GOALS.contains(goal)) {
+                throw new MojoExecutionException("Unsupported goal " + goal
+                        + ", the generation goals are " + GOALS);
+            }
+            if (!result.contains(goal)) {
+                result.add(goal);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the declaration of the plugin in the POM of the specified
+     * project, or {@code null} if the project does not declare it.
+     */
+    public static Plugin getPlugin(PluginDescriptor pluginDescriptor,
+                                   MavenProject project) {
+        return project.getPlugin(pluginDescriptor.getPluginLookupKey());
+    }
+
+    /**
+     * Returns the generation goals bound to the executions of the specified
+     * plugin declaration.
+     */
+    public static List<String> getBoundGoals(Plugin plugin) {
+        List<String> goals = new ArrayList<String>();
+
+        if (plugin != null) {
+            for (PluginExecution execution : plugin.getExecutions()) {
+                for (String goal : execution.getGoals()) {
+                    if (GOALS.contains(goal) && !goals.contains(goal)) {
+                        goals.add(goal);
+                    }
+                }
+            }
+        }
+
+        return goals;
+    }
+
+    /**
+     * Creates an execution of the specified goal configured as the execution
+     * of this goal in the specified plugin declaration, if any, and with the
+     * default values of the parameters otherwise.
+     */
+    public static MojoExecution createExecution(PluginDescriptor pluginDescriptor,
+                                                Plugin plugin, String goal,
+                                                String executionId)
+            throws MojoExecutionException {
+        MojoDescriptor mojoDescriptor = pluginDescriptor.getMojo(goal);
+        if (mojoDescriptor == null) {
+            throw new MojoExecutionException("Unknown goal " + goal);
+        }
+
+        Xpp3Dom pomConfiguration = null;
+        if (plugin != null) {
+            // the configuration of an execution includes that of the plugin
+            pomConfiguration = (Xpp3Dom) plugin.getConfiguration();
+            for (PluginExecution execution : plugin.getExecutions()) {
+                if (execution.getGoals().contains(goal)) {
+                    pomConfiguration = (Xpp3Dom) execution.getConfiguration();
+                    break;
+                }
+            }
+        }
+
+        Xpp3Dom configuration = new Xpp3Dom("configuration");
+        PlexusConfiguration defaultConfiguration =
+                mojoDescriptor.getMojoConfiguration();
+        for (Parameter parameter : mojoDescriptor.getParameters()) {
+            Xpp3Dom value = null;
+            if (pomConfiguration != null) {
+                value = pomConfiguration.getChild(parameter.getName());
+                if (value == null && parameter.getAlias() != null) {
+                    value = pomConfiguration.getChild(parameter.getAlias());
+                }
+            }
+
+            if (value != null) {
+                Xpp3Dom child = new Xpp3Dom(value, parameter.getName());
+                configuration.addChild(child);
+                continue;
+            }
+
+            PlexusConfiguration defaultValue =
+                    defaultConfiguration.getChild(parameter.getName(), false);
+            if (defaultValue != null) {
+                Xpp3Dom child = new Xpp3Dom(parameter.getName());
+                child.setValue(defaultValue.getValue(null));
+                String defaultAttribute =
+                        defaultValue.getAttribute("default-value", null);
+                if (defaultAttribute != null) {
+                    child.setAttribute("default-value", defaultAttribute);
+                }
+                configuration.addChild(child);
+            }
+        }
+
+        MojoExecution execution = new MojoExecution(mojoDescriptor, executionId);
+        execution.setConfiguration(configuration);
+
+        return execution;
+    }
+
+    /**
+     * Creates the mojo of the specified execution, configured for the current
+     * project of the session.
+     */
+    public static AbstractClassGeneratorMojo createMojo(MavenPluginManager pluginManager,
+                                                        MavenSession session,
+                                                        MojoExecution execution)
+            throws MojoExecutionException {
+        try {
+            return (AbstractClassGeneratorMojo) pluginManager.getConfiguredMojo(
+                    Mojo.class, session, execution);
+        } catch (PluginConfigurationException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } catch (PluginContainerException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+}
@@ -0,0 +1,467 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures of a class generation: wall time, CPU time, allocated bytes and
+ * counts for each phase, counters, and the classes which took the longest to
+ * generate. CPU time and allocations are measured on the thread performing
+ * the work, when the JVM supports it.
+ *
+ * @author lpellegr
+ */
+public class GenerationMetrics {
+
+    private static final ThreadMXBean threadBean =
+            ManagementFactory.getThreadMXBean();
+
+    private static final boolean allocationSupported =
+            threadBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+
+    /**
+     * Cumulated measures of a phase.
+     */
+    public static class Phase {
+
+        private final String name;
+
+        private final AtomicLong wallTime = new AtomicLong();
+
+        private final AtomicLong cpuTime = new AtomicLong();
+
+        private final AtomicLong allocatedBytes = new AtomicLong();
+
+        private final AtomicLong count = new AtomicLong();
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getWallTime() {
+            return this.wallTime.get();
+        }
+
+        public long getCpuTime() {
+            return this.cpuTime.get();
+        }
+
+        public long getAllocatedBytes() {
+            return this.allocatedBytes.get();
+        }
+
+        public long getCount() {
+            return this.count.get();
+        }
+
+        public void add(long wallTime, long cpuTime, long allocatedBytes,
+                        long count) {
+            this.wallTime.addAndGet(wallTime);
+            this.cpuTime.addAndGet(cpuTime);
+            this.allocatedBytes.addAndGet(allocatedBytes);
+            this.count.addAndGet(count);
+        }
+
+    }
+
+    /**
+     * Measure started on the current thread.
+     */
+    public static class Timer {
+
+        private final long startWallTime;
+
+        private final long startCpuTime;
+
+        private final long startAllocatedBytes;
+
+        private long wallTime;
+
+        private long cpuTime;
+
+        private long allocatedBytes;
+
+        private boolean stopped;
+
+        private Timer() {
+            this.startWallTime = System.nanoTime();
+            this.startCpuTime = currentCpuTime();
+            this.startAllocatedBytes = currentAllocatedBytes();
+        }
+
+        private Timer(long wallTime, long cpuTime, long allocatedBytes) {
+            this.startWallTime = 0;
+            this.startCpuTime = 0;
+            this.startAllocatedBytes = 0;
+            this.wallTime = wallTime;
+            this.cpuTime = cpuTime;
+            this.allocatedBytes = allocatedBytes;
+            this.stopped = true;
+        }
+
+        /**
+         * Returns a stopped measure taken elsewhere, typically by a worker
+         * process.
+         */
+        public static Timer of(long wallTime, long cpuTime,
+                               long allocatedBytes) {
+            return new Timer(wallTime, cpuTime, allocatedBytes);
+        }
+
+        /**
+         * Stops the measure, which must be done by the thread which started
+         * it. Stopping a measure again has no effect.
+         */
+        public Timer stop() {
+            if (this.stopped) {
+                return this;
+            }
+            this.stopped = true;
+            this.wallTime = System.nanoTime() - this.startWallTime;
+            this.cpuTime = currentCpuTime() - this.startCpuTime;
+            this.allocatedBytes =
+                    currentAllocatedBytes() - this.startAllocatedBytes;
+            return this;
+        }
+
+        public long getWallTime() {
+            return this.wallTime;
+        }
+
+        public long getCpuTime() {
+            return this.cpuTime;
+        }
+
+        public long getAllocatedBytes() {
+            return this.allocatedBytes;
+        }
+
+    }
+
+    private static class ClassMeasure {
+
+        private final String className;
+
+        private final Timer timer;
+
+        private ClassMeasure(String className, Timer timer) {
+            this.className = className;
+            this.timer = timer;
+        }
+
+    }
+
+    private static final Comparator<ClassMeasure> BY_WALL_TIME =
+            new Comparator<ClassMeasure>() {
+                @Override
+                public int compare(ClassMeasure m1, ClassMeasure m2) {
+                    long t1 = m1.timer.getWallTime();
+                    long t2 = m2.timer.getWallTime();
+                    return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+                }
+            };
+
+    private final long startTime = System.nanoTime();
+
+    private final Map<String, Phase> phases =
+            new LinkedHashMap<String, Phase>();
+
+    private final Map<String, AtomicLong> counters =
+            new LinkedHashMap<String, AtomicLong>();
+
+    private final int slowestClassesCount;
+
+    // min-heap keeping the slowest classes
+    private final PriorityQueue<ClassMeasure> slowestClasses;
+
+    public GenerationMetrics(List<String> phaseNames, int slowestClassesCount) {
+        for (String phaseName : phaseNames) {
+            this.phases.put(phaseName, new Phase(phaseName));
+        }
+        this.slowestClassesCount = slowestClassesCount;
+        this.slowestClasses =
+                new PriorityQueue<ClassMeasure>(
+                        Math.max(1, slowestClassesCount), BY_WALL_TIME);
+    }
+
+    public Timer start() {
+        return new Timer();
+    }
+
+    public Phase getPhase(String phaseName) {
+        return this.phases.get(phaseName);
+    }
+
+    /**
+     * Adds the measure of the specified timer, which is stopped if needed, to
+     * a phase.
+     */
+    public void record(String phaseName, Timer timer, long count) {
+        timer.stop();
+        this.phases.get(phaseName).add(
+                timer.getWallTime(), timer.getCpuTime(),
+                timer.getAllocatedBytes(), count);
+    }
+
+    /**
+     * Records the measure of the generation of a class.
+     */
+    public void recordClass(String className, Timer timer) {
+        if (this.slowestClassesCount <= 0) {
+            return;
+        }
+
+        synchronized (this.slowestClasses) {
+            this.slowestClasses.add(new ClassMeasure(className, timer));
+            if (this.slowestClasses.size() > this.slowestClassesCount) {
+                this.slowestClasses.poll();
+            }
+        }
+    }
+
+    public void increment(String counterName) {
+        this.add(counterName, 1);
+    }
+
+    public void add(String counterName, long value) {
+        this.getCounterValue(counterName).addAndGet(value);
+    }
+
+    /**
+     * Sets the specified counter to the specified value if it is greater than
+     * the current one.
+     */
+    public void max(String counterName, long value) {
+        AtomicLong counter = this.getCounterValue(counterName);
+        long current;
+        do {
+            current = counter.get();
+        } while (value > current && !counter.compareAndSet(current, value));
+    }
+
+    private AtomicLong getCounterValue(String counterName) {
+        synchronized (this.counters) {
+            AtomicLong counter = this.counters.get(counterName);
+            if (counter == null) {
+                counter = new AtomicLong();
+                this.counters.put(counterName, counter);
+            }
+            return counter;
+        }
+    }
+
+    public long getCounter(String counterName) {
+        synchronized (this.counters) {
+            AtomicLong counter = this.counters.get(counterName);
+            return counter == null ? 0 : counter.get();
+        }
+    }
+
+    private List<ClassMeasure> getSlowestClasses() {
+        List<ClassMeasure> result;
+        synchronized (this.slowestClasses) {
+            result = new ArrayList<ClassMeasure>(this.slowestClasses);
+        }
+        Collections.sort(result, Collections.reverseOrder(BY_WALL_TIME));
+
+        return result;
+    }
+
+    /**
+     * Returns a one line summary of the measures.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(toMillis(System.nanoTime() - this.startTime)).append(
+                " ms");
+
+        summary.append(" (");
+        boolean first = true;
+        for (Phase phase : this.phases.values()) {
+            if (!first) {
+                summary.append(", ");
+            }
+            first = false;
+            summary.append(phase.getName()).append(' ').append(
+                    toMillis(phase.getWallTime())).append(" ms");
+        }
+        summary.append(")");
+
+        synchronized (this.counters) {
+            for (Map.Entry<String, AtomicLong> entry : this.counters.entrySet()) {
+                summary.append(", ").append(entry.getKey()).append(' ').append(
+                        entry.getValue().get());
+            }
+        }
+
+        return summary.toString();
+    }
+
+    /**
+     * Writes the measures as a JSON document into the specified file, along
+     * with the specified properties describing the execution.
+     */
+    public void writeReport(File file, Map<String, Object> properties)
+            throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            json.append("  ").append(quote(entry.getKey())).append(": ");
+            appendValue(json, entry.getValue());
+            json.append(",\n");
+        }
+
+        json.append("  \"wallTimeMs\": ").append(
+                toMillis(System.nanoTime() - this.startTime)).append(",\n");
+        json.append("  \"cpuTimeSupported\": ").append(
+                threadBean.isCurrentThreadCpuTimeSupported()).append(",\n");
+        json.append("  \"allocationSupported\": ").append(allocationSupported).append(
+                ",\n");
+
+        json.append("  \"counters\": {");
+        synchronized (this.counters) {
+            boolean first = true;
+            for (Map.Entry<String, AtomicLong> entry : this.counters.entrySet()) {
+                json.append(first ? "\n" : ",\n");
+                first = false;
+                json.append("    ").append(quote(entry.getKey())).append(": ").append(
+                        entry.getValue().get());
+            }
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"phases\": [");
+        boolean first = true;
+        for (Phase phase : this.phases.values()) {
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    {\"name\": ").append(quote(phase.getName()));
+            appendMeasures(
+                    json, phase.getWallTime(), phase.getCpuTime(),
+                    phase.getAllocatedBytes());
+            json.append(", \"count\": ").append(phase.getCount()).append("}");
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"slowestClasses\": [");
+        first = true;
+        for (ClassMeasure measure : this.getSlowestClasses()) {
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    {\"name\": ").append(quote(measure.className));
+            appendMeasures(
+                    json, measure.timer.getWallTime(),
+                    measure.timer.getCpuTime(),
+                    measure.timer.getAllocatedBytes());
+            json.append("}");
+        }
+        json.append("\n  ]\n}\n");
+
+        file.getParentFile().mkdirs();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Writer writer =
+                new OutputStreamWriter(
+                        Files.newOutputStream(tmpFile.toPath()),
+                        Charset.forName("UTF-8"));
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+        Files.move(
+                tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void appendMeasures(StringBuilder json, long wallTime,
+                                       long cpuTime, long allocatedBytes) {
+        json.append(", \"wallTimeMs\": ").append(toMillis(wallTime));
+        json.append(", \"cpuTimeMs\": ").append(toMillis(cpuTime));
+        json.append(", \"allocatedBytes\": ").append(allocatedBytes);
+    }
+
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            json.append(quote(value.toString()));
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+
+        return quoted.append('"').toString();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static long currentCpuTime() {
+        if (!threadBean.isCurrentThreadCpuTimeSupported()) {
+            return 0;
+        }
+
+        return threadBean.getCurrentThreadCpuTime();
+    }
+
+    private static long currentAllocatedBytes() {
+        if (!allocationSupported) {
+            return 0;
+        }
+
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
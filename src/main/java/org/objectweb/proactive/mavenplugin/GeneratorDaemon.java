@@ -0,0 +1,353 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.CodeSource;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+
+/**
+ * Client of the generator daemon, a {@link GeneratorWorker} shared by the
+ * builds of the current user. The daemon publishes its port and a secret
+ * token in a state file readable by the user only; a daemon is started when
+ * none is running. A daemon is dedicated to a version of the plugin, since
+ * its state file is named after the classpath of the worker.
+ *
+ * @author lpellegr
+ */
+public class GeneratorDaemon {
+
+    private static final int CONNECT_TIMEOUT = 2000;
+
+    private static final int START_TIMEOUT = 20000;
+
+    private static final String PORT_PROPERTY = "port";
+
+    private static final String TOKEN_PROPERTY = "token";
+
+    private final File directory;
+
+    private final File stateFile;
+
+    private final List<String> workerClasspath;
+
+    private final List<String> jvmArgs;
+
+    private final int idleTimeout;
+
+    /**
+     * Creates a client of the daemon running the specified classpath. The
+     * JVM arguments and the idle timeout, in minutes, are only used if the
+     * daemon has to be started.
+     */
+    public GeneratorDaemon(File directory, List<String> workerClasspath,
+            List<String> jvmArgs, int idleTimeout) {
+        this.directory = directory;
+        this.stateFile =
+                new File(directory, "daemon-"
+                        + ClassLoaderCache.digest(workerClasspath).substring(
+                                0, 16) + ".properties");
+        this.workerClasspath = workerClasspath;
+        this.jvmArgs = jvmArgs;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Connection to the daemon, over which a single request is sent.
+     */
+    public static class Connection implements Closeable {
+
+        private final Socket socket;
+
+        private final String token;
+
+        private final DataInputStream input;
+
+        private final DataOutputStream output;
+
+        private Connection(Socket socket, String token) throws IOException {
+            this.socket = socket;
+            this.token = token;
+            this.input =
+                    new DataInputStream(new BufferedInputStream(
+                            socket.getInputStream()));
+            this.output =
+                    new DataOutputStream(new BufferedOutputStream(
+                            socket.getOutputStream()));
+        }
+
+        public String getToken() {
+            return this.token;
+        }
+
+        public DataInputStream getInput() {
+            return this.input;
+        }
+
+        public DataOutputStream getOutput() {
+            return this.output;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.socket.close();
+        }
+
+    }
+
+    /**
+     * Connects to the daemon, starting it if it is not running. Returns
+     * {@code null} if the daemon cannot be reached.
+     */
+    public Connection connect() throws IOException {
+        Connection connection = this.tryConnect();
+        if (connection != null) {
+            return connection;
+        }
+
+        Files.createDirectories(this.directory.toPath());
+        FileChannel channel =
+                FileChannel.open(
+                        new File(this.directory, this.stateFile.getName()
+                                + ".lock").toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            // concurrent builds start a single daemon
+            FileLock lock = channel.lock();
+            try {
+                connection = this.tryConnect();
+                if (connection != null) {
+                    return connection;
+                }
+
+                Process process = this.start();
+                long deadline = System.currentTimeMillis() + START_TIMEOUT;
+                while (System.currentTimeMillis() < deadline) {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+
+                    connection = this.tryConnect();
+                    if (connection != null || hasExited(process)) {
+                        return connection;
+                    }
+                }
+
+                return null;
+            } finally {
+                lock.release();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private Connection tryConnect() {
+        Properties state = readState(this.stateFile);
+        if (state == null) {
+            return null;
+        }
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(state.getProperty(PORT_PROPERTY))),
+                    CONNECT_TIMEOUT);
+            return new Connection(socket, state.getProperty(TOKEN_PROPERTY));
+        } catch (IOException ioe) {
+            // the daemon is gone, its state file is replaced by the next one
+            Util.closeQuietly(socket);
+            return null;
+        } catch (RuntimeException re) {
+            Util.closeQuietly(socket);
+            return null;
+        }
+    }
+
+    private Process start() throws IOException {
+        String logFileName = this.stateFile.getName();
+        File logFile =
+                new File(this.directory, logFileName.substring(
+                        0, logFileName.lastIndexOf('.'))
+                        + ".log");
+
+        Process process =
+                new ProcessBuilder(GeneratorWorker.getCommand(
+                        this.workerClasspath, this.jvmArgs, "daemon",
+                        this.stateFile.getPath(),
+                        Integer.toString(this.idleTimeout))).redirectErrorStream(
+                        true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+                        .start();
+        process.getOutputStream().close();
+
+        return process;
+    }
+
+    private static boolean hasExited(Process process) {
+        try {
+            process.exitValue();
+            return true;
+        } catch (IllegalThreadStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the classpath of a worker process: the elements of the plugin
+     * class loader and the Maven jars the plugin classes refer to.
+     */
+    public static List<String> getWorkerClasspath() {
+        Set<String> elements = new LinkedHashSet<String>();
+
+        ClassLoader classLoader = GeneratorWorker.class.getClassLoader();
+        if (classLoader instanceof URLClassLoader) {
+            for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                addClasspathElement(elements, url);
+            }
+        }
+
+        for (Class<?> clazz : new Class<?>[] {
+                GeneratorWorker.class, AbstractMojo.class, MavenSession.class}) {
+            CodeSource codeSource =
+                    clazz.getProtectionDomain().getCodeSource();
+            if (codeSource != null && codeSource.getLocation() != null) {
+                addClasspathElement(elements, codeSource.getLocation());
+            }
+        }
+
+        return new ArrayList<String>(elements);
+    }
+
+    private static void addClasspathElement(Set<String> elements, URL url) {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                elements.add(new File(url.toURI()).getPath());
+            } catch (URISyntaxException e) {
+                elements.add(url.getPath());
+            }
+        }
+    }
+
+    static String newToken() {
+        byte[] token = new byte[16];
+        new SecureRandom().nextBytes(token);
+
+        return Util.toHexString(token);
+    }
+
+    /**
+     * Publishes the port and the token of a daemon. The file is only readable
+     * by its owner, where supported, and replaced atomically.
+     */
+    static void writeState(File stateFile, int port, String token)
+            throws IOException {
+        Files.createDirectories(stateFile.getParentFile().toPath());
+        File tmpFile = new File(stateFile.getPath() + ".tmp");
+        Files.deleteIfExists(tmpFile.toPath());
+        try {
+            Files.createFile(
+                    tmpFile.toPath(),
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(tmpFile.toPath());
+        }
+
+        Properties state = new Properties();
+        state.setProperty(PORT_PROPERTY, Integer.toString(port));
+        state.setProperty(TOKEN_PROPERTY, token);
+        OutputStream out = new FileOutputStream(tmpFile);
+        try {
+            state.store(out, "ProActive generator daemon");
+        } finally {
+            out.close();
+        }
+
+        Files.move(
+                tmpFile.toPath(), stateFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Indicates whether the specified file holds the state of the daemon
+     * owning the specified token.
+     */
+    static boolean isState(File stateFile, String token) {
+        Properties state = readState(stateFile);
+
+        return state != null && token.equals(state.getProperty(TOKEN_PROPERTY));
+    }
+
+    private static Properties readState(File stateFile) {
+        if (!stateFile.isFile()) {
+            return null;
+        }
+
+        Properties state = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(stateFile);
+            state.load(in);
+        } catch (IOException ioe) {
+            return null;
+        } finally {
+            Util.closeQuietly(in);
+        }
+
+        if (state.getProperty(PORT_PROPERTY) == null
+                || state.getProperty(TOKEN_PROPERTY) == null) {
+            return null;
+        }
+
+        return state;
+    }
+
+}
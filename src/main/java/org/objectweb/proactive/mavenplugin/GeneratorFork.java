@@ -0,0 +1,193 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A {@link GeneratorWorker} forked for a single request, which it reads from
+ * its standard input. Its results are read as soon as they are written by a
+ * dedicated thread, so that the worker never waits for the build to consume
+ * them, and its standard error is written into a log file.
+ *
+ * @author lpellegr
+ */
+public class GeneratorFork implements Closeable {
+
+    private static final Object END = new Object();
+
+    private final Process process;
+
+    private final File logFile;
+
+    // results, followed by END or by the exception which stopped the reading
+    private final BlockingQueue<Object> results =
+            new LinkedBlockingQueue<Object>();
+
+    private volatile boolean completed;
+
+    private GeneratorFork(Process process, File logFile) {
+        this.process = process;
+        this.logFile = logFile;
+    }
+
+    /**
+     * Forks a worker with the specified classpath and JVM arguments, and
+     * sends it the specified request.
+     */
+    public static GeneratorFork start(List<String> workerClasspath,
+                                      List<String> jvmArgs,
+                                      GeneratorProtocol.Request request,
+                                      File logFile) throws IOException {
+        logFile.getParentFile().mkdirs();
+        Process process =
+                new ProcessBuilder(GeneratorWorker.getCommand(
+                        workerClasspath, jvmArgs, "fork")).redirectError(
+                        ProcessBuilder.Redirect.to(logFile)).start();
+        final GeneratorFork fork = new GeneratorFork(process, logFile);
+
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                        process.getOutputStream()));
+        try {
+            GeneratorProtocol.writeRequest(out, request);
+            out.close();
+        } catch (IOException ioe) {
+            process.destroy();
+            throw new IOException("Failed to send the request to the worker, see "
+                    + logFile, ioe);
+        }
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fork.readResults();
+            }
+        }, "proactive-generator-fork-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        return fork;
+    }
+
+    private void readResults() {
+        DataInputStream in =
+                new DataInputStream(new BufferedInputStream(
+                        this.process.getInputStream()));
+
+        try {
+            Iterator<GeneratorProtocol.Result> it =
+                    GeneratorProtocol.readResults(in);
+            while (it.hasNext()) {
+                this.results.add(it.next());
+            }
+            this.completed = true;
+            this.results.add(END);
+        } catch (IllegalStateException ise) {
+            String exitCode;
+            try {
+                exitCode = Integer.toString(this.process.waitFor());
+            } catch (InterruptedException ie) {
+                exitCode = "unknown";
+            }
+            this.results.add(new IOException("Worker JVM exited with code "
+                    + exitCode + ", see " + this.logFile, ise.getCause()));
+        } finally {
+            Util.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Returns the results of the worker, in the order of the request. Like
+     * {@link GeneratorProtocol#readResults}, the failure of the worker is
+     * thrown as an {@link IllegalStateException}.
+     */
+    public Iterator<GeneratorProtocol.Result> getResults() {
+        return new Iterator<GeneratorProtocol.Result>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                if (this.next == null) {
+                    try {
+                        this.next = GeneratorFork.this.results.take();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException(new IOException(
+                                "Interrupted while waiting for the worker", ie));
+                    }
+                }
+
+                if (this.next instanceof IOException) {
+                    throw new IllegalStateException((IOException) this.next);
+                }
+
+                return this.next != END;
+            }
+
+            @Override
+            public GeneratorProtocol.Result next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                GeneratorProtocol.Result result =
+                        (GeneratorProtocol.Result) this.next;
+                this.next = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public File getLogFile() {
+        return this.logFile;
+    }
+
+    /**
+     * Waits for the worker to exit, or kills it if it did not send all its
+     * results.
+     */
+    @Override
+    public void close() {
+        if (!this.completed) {
+            this.process.destroy();
+        }
+
+        try {
+            this.process.waitFor();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,361 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary protocol between the mojos and the worker processes generating
+ * classes on their behalf. A request describes the classpath, the generator
+ * factory and the classes to generate; the worker answers with one result per
+ * class, in the order of the request, followed by an end marker.
+ *
+ * @author lpellegr
+ */
+public class GeneratorProtocol {
+
+    private static final int MAGIC = 0x50414750;
+
+    private static final int VERSION = 1;
+
+    private static final int END = 0;
+
+    private static final int SUCCESS = 1;
+
+    private static final int FAILURE = 2;
+
+    private static final int REJECTED = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private GeneratorProtocol() {
+    }
+
+    /**
+     * A generation request.
+     */
+    public static class Request {
+
+        private final String token;
+
+        private final String generatorFactoryClassName;
+
+        private final List<String> classpathElements;
+
+        private final boolean shareClassLoaders;
+
+        private final int threads;
+
+        private final List<String> classNames;
+
+        public Request(String token, String generatorFactoryClassName,
+                List<String> classpathElements, boolean shareClassLoaders,
+                int threads, List<String> classNames) {
+            this.token = token;
+            this.generatorFactoryClassName = generatorFactoryClassName;
+            this.classpathElements = classpathElements;
+            this.shareClassLoaders = shareClassLoaders;
+            this.threads = threads;
+            this.classNames = classNames;
+        }
+
+        /**
+         * Returns the secret authenticating the client, if any.
+         */
+        public String getToken() {
+            return this.token;
+        }
+
+        public String getGeneratorFactoryClassName() {
+            return this.generatorFactoryClassName;
+        }
+
+        public List<String> getClasspathElements() {
+            return this.classpathElements;
+        }
+
+        public boolean isShareClassLoaders() {
+            return this.shareClassLoaders;
+        }
+
+        public int getThreads() {
+            return this.threads;
+        }
+
+        public List<String> getClassNames() {
+            return this.classNames;
+        }
+
+    }
+
+    /**
+     * The outcome of the generation of a class by a worker.
+     */
+    public static class Result {
+
+        private final String className;
+
+        private final byte[] data;
+
+        private final String failure;
+
+        private final long wallTime;
+
+        private final long cpuTime;
+
+        private final long allocatedBytes;
+
+        public Result(String className, byte[] data, String failure,
+                long wallTime, long cpuTime, long allocatedBytes) {
+            this.className = className;
+            this.data = data;
+            this.failure = failure;
+            this.wallTime = wallTime;
+            this.cpuTime = cpuTime;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getClassName() {
+            return this.className;
+        }
+
+        /**
+         * Returns the generated bytecode or {@code null} if the generation
+         * failed.
+         */
+        public byte[] getData() {
+            return this.data;
+        }
+
+        /**
+         * Returns the stack trace of the generation failure, if any.
+         */
+        public String getFailure() {
+            return this.failure;
+        }
+
+        public long getWallTime() {
+            return this.wallTime;
+        }
+
+        public long getCpuTime() {
+            return this.cpuTime;
+        }
+
+        public long getAllocatedBytes() {
+            return this.allocatedBytes;
+        }
+
+    }
+
+    /**
+     * Failure raised in a worker, reported with its remote stack trace.
+     */
+    public static class RemoteGenerationException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        public RemoteGenerationException(String stackTrace) {
+            super(stackTrace);
+        }
+
+        /**
+         * The local stack trace does not tell anything about the failure.
+         */
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+    }
+
+    public static void writeRequest(DataOutputStream out, Request request)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(request.getToken());
+        out.writeUTF(request.getGeneratorFactoryClassName());
+        writeStrings(out, request.getClasspathElements());
+        out.writeBoolean(request.isShareClassLoaders());
+        out.writeInt(request.getThreads());
+        writeStrings(out, request.getClassNames());
+        out.flush();
+    }
+
+    public static Request readRequest(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unsupported generation request");
+        }
+
+        return new Request(
+                in.readUTF(), in.readUTF(), readStrings(in), in.readBoolean(),
+                in.readInt(), readStrings(in));
+    }
+
+    public static void writeResult(DataOutputStream out, Result result)
+            throws IOException {
+        out.writeByte(result.getData() != null ? SUCCESS : FAILURE);
+        out.writeUTF(result.getClassName());
+        out.writeLong(result.getWallTime());
+        out.writeLong(result.getCpuTime());
+        out.writeLong(result.getAllocatedBytes());
+        writeBytes(out, result.getData() != null
+                ? result.getData() : result.getFailure().getBytes(UTF_8));
+    }
+
+    public static void writeEnd(DataOutputStream out) throws IOException {
+        out.writeByte(END);
+        out.flush();
+    }
+
+    /**
+     * Rejects a request, for instance because the client did not provide the
+     * expected token.
+     */
+    public static void writeRejection(DataOutputStream out, String reason)
+            throws IOException {
+        out.writeByte(REJECTED);
+        out.writeUTF(reason);
+        out.flush();
+    }
+
+    /**
+     * Returns an iterator over the results read from the specified stream.
+     * Reading errors, including a rejection of the request, are thrown as
+     * {@link IllegalStateException}s whose cause is an {@link IOException}.
+     */
+    public static Iterator<Result> readResults(final DataInputStream in) {
+        return new Iterator<Result>() {
+            private Result next;
+
+            private boolean end;
+
+            @Override
+            public boolean hasNext() {
+                if (this.next == null && !this.end) {
+                    try {
+                        this.next = readResult(in);
+                    } catch (IOException ioe) {
+                        throw new IllegalStateException(ioe);
+                    }
+                    this.end = this.next == null;
+                }
+
+                return this.next != null;
+            }
+
+            @Override
+            public Result next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                Result result = this.next;
+                this.next = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static Result readResult(DataInputStream in) throws IOException {
+        int status = in.read();
+
+        switch (status) {
+            case END:
+                return null;
+            case REJECTED:
+                throw new IOException("Request rejected: " + in.readUTF());
+            case -1:
+                throw new EOFException("Worker connection closed");
+            case SUCCESS:
+            case FAILURE:
+                break;
+            default:
+                throw new IOException("Unknown result status " + status);
+        }
+
+        String className = in.readUTF();
+        long wallTime = in.readLong();
+        long cpuTime = in.readLong();
+        long allocatedBytes = in.readLong();
+        byte[] data = readBytes(in);
+
+        if (status == SUCCESS) {
+            return new Result(
+                    className, data, null, wallTime, cpuTime, allocatedBytes);
+        }
+
+        return new Result(
+                className, null, new String(data, UTF_8), wallTime, cpuTime,
+                allocatedBytes);
+    }
+
+    public static String getStackTrace(Throwable t) {
+        StringWriter writer = new StringWriter();
+        t.printStackTrace(new PrintWriter(writer));
+
+        return writer.toString();
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values)
+            throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in)
+            throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+
+        return values;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data)
+            throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+
+        return data;
+    }
+
+}
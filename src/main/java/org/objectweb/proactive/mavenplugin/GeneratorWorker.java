@@ -0,0 +1,324 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process generating classes on behalf of the mojos, over the
+ * {@link GeneratorProtocol}. In daemon mode, the worker listens on a loopback
+ * port and serves the builds of the machine until it has been idle for a
+ * while: the class loaders over the jars of the projects, and the class pools
+ * of the ProActive generators they contain, remain warm from one build to the
+ * next. In fork mode, the worker serves a single request read from its
+ * standard input and writes the results to its standard output.
+ *
+ * @author lpellegr
+ */
+public class GeneratorWorker {
+
+    // period at which an idle daemon checks whether it must exit
+    private static final int IDLE_CHECK_INTERVAL = 10000;
+
+    private GeneratorWorker() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && "daemon".equals(args[0])) {
+            runDaemon(new File(args[1]), Long.parseLong(args[2]) * 60 * 1000);
+            // generator threads, if any, must not keep the daemon alive
+            System.exit(0);
+        }
+
+        if (args.length == 1 && "fork".equals(args[0])) {
+            runFork();
+            System.exit(0);
+        }
+
+        System.err.println("Usage: " + GeneratorWorker.class.getName()
+                + " daemon <state file> <idle timeout in minutes> | fork");
+        System.exit(2);
+    }
+
+    /**
+     * Returns the command running a worker with the specified classpath, JVM
+     * arguments and worker arguments.
+     */
+    static List<String> getCommand(List<String> workerClasspath,
+                                   List<String> jvmArgs, String... args) {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin"
+                + File.separator + "java").getPath());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        StringBuilder classpath = new StringBuilder();
+        for (String element : workerClasspath) {
+            if (classpath.length() > 0) {
+                classpath.append(File.pathSeparatorChar);
+            }
+            classpath.append(element);
+        }
+        command.add(classpath.toString());
+        command.add(GeneratorWorker.class.getName());
+        command.addAll(Arrays.asList(args));
+
+        return command;
+    }
+
+    private static void runFork() throws IOException {
+        // the standard output carries the results, anything printed by the
+        // generators goes to the log
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err);
+
+        DataInputStream in =
+                new DataInputStream(new BufferedInputStream(System.in));
+        GeneratorProtocol.Request request = GeneratorProtocol.readRequest(in);
+
+        long start = System.nanoTime();
+        generate(request, out);
+        out.flush();
+        log("Generated " + request.getClassNames().size() + " class(es) in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private static void runDaemon(File stateFile, long idleTimeout)
+            throws IOException {
+        ServerSocket serverSocket =
+                new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final String token = GeneratorDaemon.newToken();
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicLong lastActivity =
+                new AtomicLong(System.currentTimeMillis());
+
+        try {
+            serverSocket.setSoTimeout(IDLE_CHECK_INTERVAL);
+            GeneratorDaemon.writeState(
+                    stateFile, serverSocket.getLocalPort(), token);
+            log("Listening on port " + serverSocket.getLocalPort());
+
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    if (!GeneratorDaemon.isState(stateFile, token)) {
+                        log("Replaced by another daemon, exiting");
+                        return;
+                    }
+                    if (connections.get() == 0
+                            && System.currentTimeMillis()
+                                    - lastActivity.get() > idleTimeout) {
+                        log("Idle for " + idleTimeout / 60000
+                                + " minute(s), exiting");
+                        return;
+                    }
+                    continue;
+                }
+
+                connections.incrementAndGet();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(socket, token);
+                        } catch (IOException ioe) {
+                            log("Connection failed: " + ioe);
+                        } finally {
+                            Util.closeQuietly(socket);
+                            lastActivity.set(System.currentTimeMillis());
+                            connections.decrementAndGet();
+                        }
+                    }
+                }, "proactive-generator-connection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } finally {
+            Util.closeQuietly(serverSocket);
+            if (GeneratorDaemon.isState(stateFile, token)) {
+                stateFile.delete();
+            }
+            ClassLoaderCache.closeIdle();
+        }
+    }
+
+    private static void serve(Socket socket, String token) throws IOException {
+        DataInputStream in =
+                new DataInputStream(new BufferedInputStream(
+                        socket.getInputStream()));
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                        socket.getOutputStream()));
+
+        GeneratorProtocol.Request request = GeneratorProtocol.readRequest(in);
+        if (!token.equals(request.getToken())) {
+            GeneratorProtocol.writeRejection(out, "invalid token");
+            return;
+        }
+
+        long start = System.nanoTime();
+        generate(request, out);
+        log("Generated " + request.getClassNames().size() + " class(es) in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Generates the requested classes and writes the results in the order of
+     * the request. The failure of a class is reported as its result.
+     */
+    static void generate(GeneratorProtocol.Request request,
+                         DataOutputStream out) throws IOException {
+        List<String> classNames = request.getClassNames();
+        final ClassGeneratorPool.Factory factory;
+        try {
+            factory =
+                    (ClassGeneratorPool.Factory) Class.forName(
+                            request.getGeneratorFactoryClassName())
+                            .getDeclaredConstructor()
+                            .newInstance();
+        } catch (Exception e) {
+            Throwable failure = e;
+            if (e instanceof InvocationTargetException) {
+                failure = e.getCause();
+            }
+            String stackTrace = GeneratorProtocol.getStackTrace(failure);
+            for (String className : classNames) {
+                GeneratorProtocol.writeResult(out, new GeneratorProtocol.Result(
+                        className, null, stackTrace, 0, 0, 0));
+            }
+            GeneratorProtocol.writeEnd(out);
+            return;
+        }
+
+        // measures of each class, taken by the generating threads
+        final GenerationMetrics metrics =
+                new GenerationMetrics(Collections.<String> emptyList(), 0);
+        final Map<String, GenerationMetrics.Timer> timers =
+                new ConcurrentHashMap<String, GenerationMetrics.Timer>();
+
+        // the directories are digested once for all the threads of the request
+        ClassLoaderCache.DirectoryState directoryState = null;
+        if (request.isShareClassLoaders()) {
+            directoryState =
+                    new ClassLoaderCache.DirectoryState(
+                            request.getClasspathElements());
+        }
+
+        ClassGeneratorPool pool =
+                new ClassGeneratorPool(
+                        request.getClasspathElements(),
+                        Math.max(1, request.getThreads()),
+                        request.isShareClassLoaders(), directoryState,
+                        new ClassGeneratorPool.Factory() {
+                            @Override
+                            public ClassGenerator createGenerator(ClassLoader classLoader)
+                                    throws Exception {
+                                final ClassGenerator generator =
+                                        factory.createGenerator(classLoader);
+
+                                return new ClassGenerator() {
+                                    @Override
+                                    public byte[] generateClass(String className)
+                                            throws Exception {
+                                        GenerationMetrics.Timer timer =
+                                                metrics.start();
+                                        try {
+                                            return generator.generateClass(className);
+                                        } finally {
+                                            timers.put(className, timer.stop());
+                                        }
+                                    }
+                                };
+                            }
+                        });
+
+        try {
+            List<Future<byte[]>> results = pool.submit(classNames);
+
+            for (int i = 0; i < classNames.size(); i++) {
+                String className = classNames.get(i);
+                byte[] data = null;
+                String failure = null;
+                try {
+                    data = results.get(i).get();
+                    if (data == null) {
+                        failure = "No class generated for " + className;
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while generating "
+                            + className, ie);
+                } catch (ExecutionException ee) {
+                    failure = GeneratorProtocol.getStackTrace(ee.getCause());
+                }
+
+                GenerationMetrics.Timer timer = timers.remove(className);
+                if (timer == null) {
+                    timer = GenerationMetrics.Timer.of(0, 0, 0);
+                }
+                GeneratorProtocol.writeResult(out, new GeneratorProtocol.Result(
+                        className, data, failure, timer.getWallTime(),
+                        timer.getCpuTime(), timer.getAllocatedBytes()));
+
+                // results are flushed as soon as the next one is not ready
+                if (i + 1 < classNames.size() && !results.get(i + 1).isDone()) {
+                    out.flush();
+                }
+            }
+            GeneratorProtocol.writeEnd(out);
+        } finally {
+            pool.shutdown();
+
+            // the classes written by the client since then do not make the
+            // class loaders stale for the next request
+            if (directoryState != null) {
+                directoryState.update();
+            }
+        }
+    }
+
+    private static void log(String message) {
+        System.err.println(String.format(
+                "[%1$tF %1$tT] %2$s", System.currentTimeMillis(), message));
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Samples the heap of the JVM while classes are generated. The peak of the
+ * used heap is recorded, and the heap retained after the last garbage
+ * collection, which approximates the live data, is compared to a threshold.
+ *
+ * @author lpellegr
+ */
+public class HeapMonitor {
+
+    private static final MemoryMXBean memoryBean =
+            ManagementFactory.getMemoryMXBean();
+
+    private final long threshold;
+
+    private long peakUsed;
+
+    private long retainedAtReset;
+
+    /**
+     * Creates a monitor whose threshold is the specified percentage of the
+     * maximum heap size, no threshold being used if it is not positive.
+     */
+    public HeapMonitor(int thresholdPercent) {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        if (thresholdPercent > 0 && maxHeap != Long.MAX_VALUE) {
+            this.threshold = maxHeap / 100 * thresholdPercent;
+        } else {
+            this.threshold = 0;
+        }
+        this.retainedAtReset = getRetained();
+    }
+
+    /**
+     * Samples the heap. Returns {@code true} if the heap retained after the
+     * last garbage collection exceeds the threshold, this collection having
+     * occurred since the last reset.
+     */
+    public boolean sample() {
+        long used = memoryBean.getHeapMemoryUsage().getUsed();
+        if (used > this.peakUsed) {
+            this.peakUsed = used;
+        }
+
+        if (this.threshold <= 0) {
+            return false;
+        }
+
+        long retained = getRetained();
+        return retained > this.threshold && retained != this.retainedAtReset;
+    }
+
+    /**
+     * Notifies the monitor that the retained data has been released, so that
+     * the retained heap is only compared again after the next collection.
+     */
+    public void reset() {
+        this.retainedAtReset = getRetained();
+    }
+
+    public long getPeakUsed() {
+        return this.peakUsed;
+    }
+
+    private static long getRetained() {
+        long retained = 0;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (usage != null) {
+                    retained += usage.getUsed();
+                }
+            }
+        }
+
+        return retained;
+    }
+
+}
@@ -0,0 +1,282 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packages the generated classes into a single jar. The jar is written
+ * deterministically when the output is closed: entries are sorted, have a
+ * fixed timestamp and the manifest does not depend on the build environment,
+ * so that the same classes always produce the same jar. Classes of a previous
+ * jar which are not regenerated are kept; they are copied from the previous
+ * jar when the new one is written instead of being held in memory, whereas
+ * the classes written into the output are held until then.
+ *
+ * @author lpellegr
+ */
+public class JarClassOutput implements ClassOutput {
+
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static final byte[] MANIFEST =
+            "Manifest-Version: 1.0\r\nCreated-By: proactive-maven-plugin\r\n\r\n".getBytes(Charset.forName("UTF-8"));
+
+    // zip entries store local times, hence a date built in the default time
+    // zone is required for the stored date not to depend on it
+    private static final long ENTRY_TIME =
+            new GregorianCalendar(1980, Calendar.JANUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    private final File jarFile;
+
+    // the previous jar, from which the entries not written are copied
+    private ZipFile previousJar;
+
+    private final Set<String> previousEntryNames = new HashSet<String>();
+
+    private final SortedMap<String, byte[]> entries =
+            new TreeMap<String, byte[]>();
+
+    private boolean modified;
+
+    public JarClassOutput(File jarFile) throws IOException {
+        this.jarFile = jarFile;
+
+        if (jarFile.isFile()) {
+            this.readEntryNames();
+        } else {
+            this.modified = true;
+        }
+    }
+
+    public File getJarFile() {
+        return this.jarFile;
+    }
+
+    private void readEntryNames() throws IOException {
+        this.previousJar = new ZipFile(this.jarFile);
+
+        Enumeration<? extends ZipEntry> zipEntries = this.previousJar.entries();
+        while (zipEntries.hasMoreElements()) {
+            ZipEntry entry = zipEntries.nextElement();
+            if (!entry.isDirectory() && !entry.getName().equals(MANIFEST_NAME)) {
+                this.previousEntryNames.add(entry.getName());
+            }
+        }
+    }
+
+    private byte[] readPreviousEntry(String entryName) throws IOException {
+        InputStream in =
+                this.previousJar.getInputStream(this.previousJar.getEntry(entryName));
+        try {
+            return Util.readFully(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(String className) {
+        String entryName = ClasspathIndex.toResourceName(className);
+
+        return this.entries.containsKey(entryName)
+                || this.previousEntryNames.contains(entryName);
+    }
+
+    @Override
+    public Future<Result> submit(String className, byte[] data) {
+        final String entryName = ClasspathIndex.toResourceName(className);
+        final byte[] entryData = data;
+
+        // comparing with a previous entry may fail to read the previous jar
+        FutureTask<Result> future = new FutureTask<Result>(new Callable<Result>() {
+            @Override
+            public Result call() throws IOException {
+                return JarClassOutput.this.put(entryName, entryData);
+            }
+        });
+        future.run();
+
+        return future;
+    }
+
+    @Override
+    public Result writeResource(String resourceName, byte[] data)
+            throws IOException {
+        return this.put(resourceName, data);
+    }
+
+    private synchronized Result put(String entryName, byte[] data)
+            throws IOException {
+        byte[] previous = this.entries.put(entryName, data);
+        if (this.previousEntryNames.remove(entryName)) {
+            previous = this.readPreviousEntry(entryName);
+        }
+
+        boolean written = !Arrays.equals(previous, data);
+        this.modified |= written;
+
+        return new Result(this.getLocation(entryName), written);
+    }
+
+    @Override
+    public synchronized String delete(String className) {
+        String entryName = ClasspathIndex.toResourceName(className);
+
+        if (this.entries.remove(entryName) == null
+                && !this.previousEntryNames.remove(entryName)) {
+            return null;
+        }
+        this.modified = true;
+
+        return this.getLocation(entryName);
+    }
+
+    private String getLocation(String entryName) {
+        return this.jarFile + "!/" + entryName;
+    }
+
+    /**
+     * Writes the jar if its content changed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (this.modified) {
+                this.write();
+            }
+        } finally {
+            if (this.previousJar != null) {
+                this.previousJar.close();
+                this.previousJar = null;
+            }
+        }
+    }
+
+    private void write() throws IOException {
+        this.jarFile.getParentFile().mkdirs();
+        File tmpFile = new File(this.jarFile.getPath() + ".tmp");
+
+        try {
+            ZipOutputStream out =
+                    new ZipOutputStream(new BufferedOutputStream(
+                            Files.newOutputStream(tmpFile.toPath())));
+            try {
+                this.putEntry(out, "META-INF/", null);
+                this.putEntry(out, MANIFEST_NAME, MANIFEST);
+
+                SortedSet<String> entryNames =
+                        new TreeSet<String>(this.entries.keySet());
+                entryNames.addAll(this.previousEntryNames);
+
+                SortedSet<String> directories = new TreeSet<String>();
+                for (String entryName : entryNames) {
+                    int index = entryName.indexOf('/');
+                    while (index >= 0) {
+                        directories.add(entryName.substring(0, index + 1));
+                        index = entryName.indexOf('/', index + 1);
+                    }
+                }
+                directories.remove("META-INF/");
+
+                // directories are written before the files they contain
+                entryNames.addAll(directories);
+                entryNames.remove(MANIFEST_NAME);
+
+                for (String entryName : entryNames) {
+                    if (directories.contains(entryName)) {
+                        this.putEntry(out, entryName, null);
+                    } else if (this.entries.containsKey(entryName)) {
+                        this.putEntry(
+                                out, entryName, this.entries.get(entryName));
+                    } else {
+                        this.copyPreviousEntry(out, entryName);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+
+            // the previous jar is closed before being replaced
+            if (this.previousJar != null) {
+                this.previousJar.close();
+                this.previousJar = null;
+            }
+
+            Files.move(
+                    tmpFile.toPath(), this.jarFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            this.modified = false;
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    private void putEntry(ZipOutputStream out, String name, byte[] data)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+        if (data != null) {
+            out.write(data);
+        }
+        out.closeEntry();
+    }
+
+    private void copyPreviousEntry(ZipOutputStream out, String name)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+
+        InputStream in =
+                this.previousJar.getInputStream(this.previousJar.getEntry(name));
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        out.closeEntry();
+    }
+
+}
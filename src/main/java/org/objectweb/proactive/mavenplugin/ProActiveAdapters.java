@@ -0,0 +1,315 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Map;
+
+/**
+ * Binds the adapters to the ProActive classes of a project class loader. The
+ * entry points are resolved once, as method handles adapted to the types of
+ * the adapters, so that the generation loops perform direct calls without
+ * boxing nor access checks, and exceptions are not wrapped. When an entry
+ * point has changed between ProActive versions, the signature of the version
+ * in use is selected at binding time.
+ *
+ * @author lpellegr
+ * @author bsauvan
+ */
+public class ProActiveAdapters {
+
+    private static final String MOP_UTILS_CLASSNAME =
+            "org.objectweb.proactive.core.mop.Utils";
+
+    private static final String JAVASSIST_BYTE_CODE_STUB_BUILDER_CLASSNAME =
+            "org.objectweb.proactive.core.mop.JavassistByteCodeStubBuilder";
+
+    private static final String COMPONENT_UTILS_CLASSNAME =
+            "org.objectweb.proactive.core.component.gen.Utils";
+
+    private static final String COMPONENT_CLASSNAME =
+            "org.objectweb.fractal.api.Component";
+
+    private static final String CONTROLLER_DESCRIPTION_CLASSNAME =
+            "org.objectweb.proactive.core.component.ControllerDescription";
+
+    private static final MethodHandles.Lookup lookup =
+            MethodHandles.publicLookup();
+
+    private ProActiveAdapters() {
+    }
+
+    /**
+     * Binds a stub generator adapter to the ProActive classes of the
+     * specified class loader.
+     * 
+     * @throws ClassNotFoundException
+     *             if ProActive is not available from the class loader.
+     */
+    public static StubGeneratorAdapter bindStubGenerator(ClassLoader classLoader)
+            throws ClassNotFoundException, NoSuchMethodException,
+            IllegalAccessException {
+        Class<?> utilsClass = classLoader.loadClass(MOP_UTILS_CLASSNAME);
+        Class<?> stubBuilderClass =
+                classLoader.loadClass(JAVASSIST_BYTE_CODE_STUB_BUILDER_CLASSNAME);
+
+        return new MethodHandleStubGeneratorAdapter(
+                findWithGenericParameters(
+                        utilsClass, "convertClassNameToStubClassName",
+                        String.class),
+                lookup.findStatic(
+                        utilsClass, "convertStubClassNameToClassName",
+                        MethodType.methodType(String.class, String.class)),
+                findWithGenericParameters(
+                        stubBuilderClass, "create", byte[].class));
+    }
+
+    /**
+     * Binds a component generator adapter to the ProActive classes of the
+     * specified class loader.
+     * 
+     * @throws ClassNotFoundException
+     *             if ProActive is not available from the class loader.
+     */
+    public static ComponentGeneratorAdapter bindComponentGenerator(ClassLoader classLoader)
+            throws ClassNotFoundException, NoSuchMethodException,
+            IllegalAccessException {
+        Class<?> componentClass = classLoader.loadClass(COMPONENT_CLASSNAME);
+        Class<?> controllerDescriptionClass =
+                classLoader.loadClass(CONTROLLER_DESCRIPTION_CLASSNAME);
+        Class<?> utilsClass = classLoader.loadClass(COMPONENT_UTILS_CLASSNAME);
+
+        MethodType namingType =
+                MethodType.methodType(String.class, String.class, String.class);
+
+        // new ControllerDescription(null, null, location).getControllersSignatures()
+        MethodHandle controllerDescriptionConstructor =
+                lookup.findConstructor(
+                        controllerDescriptionClass,
+                        MethodType.methodType(
+                                void.class, String.class, String.class,
+                                String.class));
+        MethodHandle getControllersSignatures =
+                lookup.findVirtual(
+                        controllerDescriptionClass,
+                        "getControllersSignatures",
+                        MethodType.methodType(Map.class));
+        MethodHandle controllersSignatures =
+                MethodHandles.insertArguments(
+                        MethodHandles.filterReturnValue(
+                                controllerDescriptionConstructor,
+                                getControllersSignatures), 0, null, null);
+
+        return new MethodHandleComponentGeneratorAdapter(
+                classLoader, componentClass,
+                lookup.findStatic(
+                        utilsClass, "getMetaObjectClassName", namingType),
+                lookup.findStatic(
+                        utilsClass,
+                        "getMetaObjectComponentRepresentativeClassName",
+                        namingType),
+                controllersSignatures.asType(MethodType.methodType(
+                        Map.class, String.class)),
+                lookup.findStatic(
+                        utilsClass, "getClassData",
+                        MethodType.methodType(byte[].class, String.class)));
+    }
+
+    /**
+     * Finds a static method taking a class name and, since ProActive 4, the
+     * generic parameters of the class. The returned handle only takes the
+     * class name.
+     */
+    private static MethodHandle findWithGenericParameters(Class<?> clazz,
+                                                          String name,
+                                                          Class<?> returnType)
+            throws NoSuchMethodException, IllegalAccessException {
+        try {
+            MethodHandle handle =
+                    lookup.findStatic(clazz, name, MethodType.methodType(
+                            returnType, String.class, Class[].class));
+            return MethodHandles.insertArguments(handle, 1, (Object) null);
+        } catch (NoSuchMethodException e) {
+            return lookup.findStatic(
+                    clazz, name, MethodType.methodType(returnType, String.class));
+        }
+    }
+
+    private static Exception rethrow(Throwable t) {
+        if (t instanceof Exception) {
+            return (Exception) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+
+        return new UndeclaredThrowableException(t);
+    }
+
+    private static class MethodHandleStubGeneratorAdapter implements
+            StubGeneratorAdapter {
+
+        private final MethodHandle convertClassNameToStubClassName;
+
+        private final MethodHandle convertStubClassNameToClassName;
+
+        private final MethodHandle create;
+
+        private MethodHandleStubGeneratorAdapter(MethodHandle convertClassNameToStubClassName,
+                MethodHandle convertStubClassNameToClassName,
+                MethodHandle create) {
+            this.convertClassNameToStubClassName =
+                    convertClassNameToStubClassName;
+            this.convertStubClassNameToClassName =
+                    convertStubClassNameToClassName;
+            this.create = create;
+        }
+
+        @Override
+        public String getStubClassName(String className) throws Exception {
+            try {
+                return (String) this.convertClassNameToStubClassName.invokeExact(className);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public String getClassName(String stubClassName) throws Exception {
+            try {
+                return (String) this.convertStubClassNameToClassName.invokeExact(stubClassName);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public byte[] generateStub(String className) throws Exception {
+            try {
+                return (byte[]) this.create.invokeExact(className);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+    }
+
+    private static class MethodHandleComponentGeneratorAdapter implements
+            ComponentGeneratorAdapter {
+
+        private final ClassLoader classLoader;
+
+        private final Class<?> componentClass;
+
+        private final MethodHandle getMetaObjectClassName;
+
+        private final MethodHandle getMetaObjectComponentRepresentativeClassName;
+
+        private final MethodHandle getControllersSignatures;
+
+        private final MethodHandle getClassData;
+
+        private MethodHandleComponentGeneratorAdapter(ClassLoader classLoader,
+                Class<?> componentClass,
+                MethodHandle getMetaObjectClassName,
+                MethodHandle getMetaObjectComponentRepresentativeClassName,
+                MethodHandle getControllersSignatures,
+                MethodHandle getClassData) {
+            this.classLoader = classLoader;
+            this.componentClass = componentClass;
+            this.getMetaObjectClassName = getMetaObjectClassName;
+            this.getMetaObjectComponentRepresentativeClassName =
+                    getMetaObjectComponentRepresentativeClassName;
+            this.getControllersSignatures = getControllersSignatures;
+            this.getClassData = getClassData;
+        }
+
+        @Override
+        public String getMetaObjectClassName(String interfaceName,
+                                             String interfaceSignature)
+                throws Exception {
+            try {
+                return (String) this.getMetaObjectClassName.invokeExact(
+                        interfaceName, interfaceSignature);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public String getRepresentativeClassName(String interfaceName,
+                                                 String interfaceSignature)
+                throws Exception {
+            try {
+                return (String) this.getMetaObjectComponentRepresentativeClassName.invokeExact(
+                        interfaceName, interfaceSignature);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map<String, String> getControllersSignatures(String controllersConfigFileLocation)
+                throws Exception {
+            try {
+                return (Map<String, String>) (Map<?, ?>) this.getControllersSignatures.invokeExact(controllersConfigFileLocation);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        /**
+         * Instantiates the controller without owner, which is resolved once
+         * per implementation class, hence without binding.
+         */
+        @Override
+        public String getControllerInterfaceName(String implementationClassName)
+                throws Exception {
+            Class<?> implementationClass =
+                    this.classLoader.loadClass(implementationClassName);
+
+            try {
+                Object controller =
+                        lookup.findConstructor(
+                                implementationClass,
+                                MethodType.methodType(
+                                        void.class, this.componentClass)).invoke(
+                                null);
+                return (String) lookup.findVirtual(
+                        controller.getClass(), "getFcItfName",
+                        MethodType.methodType(String.class)).invoke(controller);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public byte[] generateClass(String className) throws Exception {
+            try {
+                return (byte[]) this.getClassData.invokeExact(className);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,232 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Detects the version of the ProActive Programming library of a module
+ * without loading any class. The version is read from the manifest, or from
+ * the Maven {@code pom.properties} of ProActive, of the jar containing
+ * {@code PAVersion}, and otherwise taken from the resolved artifact of this
+ * jar. Versions are cached per build session and per jar, so that the modules
+ * of a reactor depending on the same jar read it once.
+ *
+ * @author lpellegr
+ */
+public class ProActiveVersion {
+
+    public static final String PAVERSION_CLASSNAME =
+            "org.objectweb.proactive.api.PAVersion";
+
+    /**
+     * Name of the project property publishing the detected version. It is
+     * distinct from {@code proactive.version}, which POMs commonly define to
+     * select the version of the dependency.
+     */
+    public static final String PROPERTY_NAME = "proactive.detectedVersion";
+
+    private static final String POM_PROPERTIES_PREFIX = "META-INF/maven/";
+
+    private static final String PROACTIVE_GROUP_ID = "org.objectweb.proactive";
+
+    private static final Map<String, String> versions =
+            new HashMap<String, String>();
+
+    private static Object session;
+
+    private ProActiveVersion() {
+    }
+
+    /**
+     * Returns the version of the ProActive Programming library of the
+     * specified classpath, or {@code null} if the classpath does not contain
+     * it or if its version cannot be determined.
+     */
+    public static String detect(Object currentSession, MavenProject project,
+                                ClasspathIndex classpathIndex)
+            throws IOException {
+        File element =
+                classpathIndex.getLocation(ClasspathIndex.toResourceName(PAVERSION_CLASSNAME));
+        if (element == null) {
+            return null;
+        }
+
+        String key =
+                element.getPath() + ":" + element.lastModified() + ":"
+                        + element.length();
+        synchronized (ProActiveVersion.class) {
+            if (session != currentSession) {
+                versions.clear();
+                session = currentSession;
+            }
+            if (versions.containsKey(key)) {
+                return versions.get(key);
+            }
+        }
+
+        String version;
+        if (element.isFile()) {
+            version = readJarVersion(element);
+        } else {
+            version = readDirectoryVersion(element);
+        }
+        if (version == null) {
+            version = getArtifactVersion(project, element);
+        }
+
+        synchronized (ProActiveVersion.class) {
+            if (session == currentSession) {
+                versions.put(key, version);
+            }
+        }
+
+        return version;
+    }
+
+    /**
+     * Fails if the specified version is not in the specified range, expressed
+     * in the Maven version range syntax. Any version is accepted if the range
+     * is {@code null} or empty.
+     */
+    public static void checkCompatibility(String version, String range)
+            throws MojoExecutionException {
+        if (range == null || range.trim().isEmpty()) {
+            return;
+        }
+
+        VersionRange versionRange;
+        try {
+            versionRange = VersionRange.createFromVersionSpec(range.trim());
+        } catch (InvalidVersionSpecificationException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+
+        if (version == null) {
+            throw new MojoExecutionException(
+                    "The version of ProActive Programming cannot be determined, it is required to be in "
+                            + range);
+        }
+        if (!versionRange.containsVersion(new DefaultArtifactVersion(version))) {
+            throw new MojoExecutionException("ProActive Programming "
+                    + version + " is not supported, the version must be in "
+                    + range);
+        }
+    }
+
+    private static String readJarVersion(File jar) throws IOException {
+        JarFile jarFile = new JarFile(jar, false);
+
+        try {
+            String version = getManifestVersion(jarFile.getManifest());
+            if (version != null) {
+                return version;
+            }
+
+            // the pom.properties of ProActive, the resolved artifact is
+            // used otherwise
+            Enumeration<? extends ZipEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.startsWith(POM_PROPERTIES_PREFIX)
+                        || !name.endsWith("/pom.properties")) {
+                    continue;
+                }
+
+                Properties properties = new Properties();
+                InputStream in = jarFile.getInputStream(entry);
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+
+                if (PROACTIVE_GROUP_ID.equals(properties.getProperty("groupId"))) {
+                    return properties.getProperty("version");
+                }
+            }
+
+            return null;
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    private static String readDirectoryVersion(File directory)
+            throws IOException {
+        File manifestFile = new File(directory, JarFile.MANIFEST_NAME);
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+
+        InputStream in = new FileInputStream(manifestFile);
+        try {
+            return getManifestVersion(new Manifest(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String getManifestVersion(Manifest manifest) {
+        if (manifest == null) {
+            return null;
+        }
+
+        Attributes attributes = manifest.getMainAttributes();
+        String version =
+                attributes.getValue(Attributes.Name.IMPLEMENTATION_VERSION);
+        if (version == null) {
+            version = attributes.getValue("Bundle-Version");
+        }
+
+        return version;
+    }
+
+    private static String getArtifactVersion(MavenProject project, File file) {
+        if (project == null || project.getArtifacts() == null) {
+            return null;
+        }
+
+        for (Artifact artifact : project.getArtifacts()) {
+            if (file.equals(artifact.getFile())) {
+                return artifact.getBaseVersion();
+            }
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Include and exclude patterns matched against resource names, with the usual
+ * Maven syntax: {@code **} matches any number of directories, {@code *} any
+ * sequence of characters within a directory and {@code ?} one character.
+ *
+ * @author lpellegr
+ */
+public class ResourcePatterns {
+
+    private final List<Pattern> includes;
+
+    private final List<Pattern> excludes;
+
+    public ResourcePatterns(List<String> includes, List<String> excludes) {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+    }
+
+    /**
+     * Indicates whether the specified resource name, whose directories are
+     * separated by {@code /}, is included and not excluded.
+     */
+    public boolean matches(String resourceName) {
+        return matchesAny(this.includes, resourceName)
+                && !matchesAny(this.excludes, resourceName);
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns,
+                                      String resourceName) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(resourceName).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static List<Pattern> compile(List<String> patterns) {
+        List<Pattern> result = new ArrayList<Pattern>();
+
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                result.add(Pattern.compile(toRegex(pattern.trim().replace(
+                        '\\', '/'))));
+            }
+        }
+
+        return result;
+    }
+
+    private static String toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+
+            if (pattern.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 3;
+            } else if (pattern.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+                i++;
+            } else if (c == '?') {
+                regex.append("[^/]");
+                i++;
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+                i++;
+            }
+        }
+
+        return regex.toString();
+    }
+
+}
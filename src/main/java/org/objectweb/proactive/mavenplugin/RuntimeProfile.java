@@ -0,0 +1,139 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Class names collected at runtime, typically the stubs generated on the fly
+ * by the nodes of an application. A profile is either a JSON document, whose
+ * string values are class names, or a text file. A text file lists one class
+ * name per line, lines starting with {@code #} being ignored, or is a log in
+ * which the names of the generated stubs are looked for.
+ *
+ * @author lpellegr
+ */
+public class RuntimeProfile {
+
+    private static final Pattern CLASS_NAME_PATTERN =
+            Pattern.compile("[\\p{L}_$][\\p{L}\\p{N}_$]*(?:\\.[\\p{L}_$][\\p{L}\\p{N}_$]*)+");
+
+    private static final Pattern STUB_CLASS_NAME_PATTERN =
+            Pattern.compile("pa\\.stub\\.[\\p{L}\\p{N}_$.]*[\\p{L}\\p{N}_$]");
+
+    private RuntimeProfile() {
+    }
+
+    /**
+     * Returns the class names found in the specified profile, in order of
+     * appearance. Names may denote either classes or their stubs.
+     */
+    public static Set<String> read(File file) throws IOException {
+        String content =
+                new String(
+                        Files.readAllBytes(file.toPath()),
+                        Charset.forName("UTF-8"));
+
+        if (file.getName().endsWith(".json")) {
+            return readJson(content);
+        }
+
+        return readText(content);
+    }
+
+    private static Set<String> readText(String content) throws IOException {
+        Set<String> classNames = new LinkedHashSet<String>();
+        BufferedReader reader =
+                new BufferedReader(new StringReader(content));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (CLASS_NAME_PATTERN.matcher(line).matches()) {
+                classNames.add(line);
+            } else {
+                Matcher matcher = STUB_CLASS_NAME_PATTERN.matcher(line);
+                while (matcher.find()) {
+                    classNames.add(matcher.group());
+                }
+            }
+        }
+
+        return classNames;
+    }
+
+    /**
+     * Collects the string values of a JSON document which are class names.
+     * The structure of the document does not matter, so that any dump
+     * format can be used.
+     */
+    private static Set<String> readJson(String content) throws IOException {
+        Set<String> classNames = new LinkedHashSet<String>();
+        int i = 0;
+
+        while (i < content.length()) {
+            if (content.charAt(i) != '"') {
+                i++;
+                continue;
+            }
+
+            StringBuilder value = new StringBuilder();
+            i++;
+            while (i < content.length() && content.charAt(i) != '"') {
+                char c = content.charAt(i);
+                if (c == '\\' && i + 1 < content.length()) {
+                    char escaped = content.charAt(++i);
+                    if (escaped == 'u' && i + 4 < content.length()) {
+                        value.append((char) Integer.parseInt(
+                                content.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    } else {
+                        value.append(escaped);
+                    }
+                } else {
+                    value.append(c);
+                }
+                i++;
+            }
+            if (i >= content.length()) {
+                throw new IOException("Unterminated JSON string");
+            }
+            i++;
+
+            String name = value.toString().trim();
+            if (CLASS_NAME_PATTERN.matcher(name).matches()) {
+                classNames.add(name);
+            }
+        }
+
+        return classNames;
+    }
+
+}
@@ -0,0 +1,181 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Artifacts speeding up the startup of the applications using the generated
+ * classes. The index maps each source class to the classes generated from
+ * it, so that a node finds them without looking them up one at a time. The
+ * class list names the generated classes and their sources in the format
+ * expected by {@code -XX:SharedClassListFile}, from which a class data
+ * sharing archive is dumped by a forked JVM.
+ *
+ * @author lpellegr
+ */
+public class StartupArtifacts {
+
+    /**
+     * Directory of the output containing the startup artifacts.
+     */
+    public static final String RESOURCE_DIRECTORY = "META-INF/proactive/";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SortedMap<String, SortedSet<String>> generatedClassNames =
+            new TreeMap<String, SortedSet<String>>();
+
+    private final SortedSet<String> classNames = new TreeSet<String>();
+
+    /**
+     * Records a class generated from the specified source classes.
+     */
+    public void add(String className, Collection<String> sourceClassNames) {
+        for (String sourceClassName : sourceClassNames) {
+            SortedSet<String> names =
+                    this.generatedClassNames.get(sourceClassName);
+            if (names == null) {
+                names = new TreeSet<String>();
+                this.generatedClassNames.put(sourceClassName, names);
+            }
+            names.add(className);
+            this.classNames.add(sourceClassName);
+        }
+
+        this.classNames.add(className);
+    }
+
+    public boolean isEmpty() {
+        return this.classNames.isEmpty();
+    }
+
+    public static String getIndexResourceName(String goal) {
+        return RESOURCE_DIRECTORY + goal + ".index";
+    }
+
+    public static String getClassListResourceName(String goal) {
+        return RESOURCE_DIRECTORY + goal + ".classlist";
+    }
+
+    /**
+     * Returns the index, with one {@code source=generated[,generated]} line
+     * per source class. Lines are sorted so that the same classes always
+     * produce the same index.
+     */
+    public byte[] getIndex() {
+        StringBuilder index = new StringBuilder();
+
+        for (Map.Entry<String, SortedSet<String>> entry : this.generatedClassNames.entrySet()) {
+            index.append(entry.getKey()).append('=');
+            boolean first = true;
+            for (String className : entry.getValue()) {
+                if (!first) {
+                    index.append(',');
+                }
+                index.append(className);
+                first = false;
+            }
+            index.append('\n');
+        }
+
+        return index.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Returns the class list, with the internal name of a class per line.
+     */
+    public byte[] getClassList() {
+        StringBuilder classList = new StringBuilder();
+
+        for (String className : this.classNames) {
+            classList.append(className.replace('.', '/')).append('\n');
+        }
+
+        return classList.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Dumps the class data sharing archive of the classes of the specified
+     * list with a forked JVM. Since the JVM only archives classes loaded from
+     * jars, the classpath must not contain directories, and the applications
+     * using the archive must start with the same classpath or a classpath
+     * extending it. The archive is replaced once completely dumped.
+     */
+    public static void dumpArchive(List<String> classpath, File classListFile,
+                                   File archiveFile, List<String> jvmArgs,
+                                   File logFile) throws IOException {
+        File tmpFile = new File(archiveFile.getPath() + ".tmp");
+
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin"
+                + File.separator + "java").getPath());
+        command.addAll(jvmArgs);
+        command.add("-Xshare:dump");
+        command.add("-XX:SharedClassListFile=" + classListFile.getPath());
+        command.add("-XX:SharedArchiveFile=" + tmpFile.getPath());
+        command.add("-cp");
+        StringBuilder path = new StringBuilder();
+        for (String element : classpath) {
+            if (path.length() > 0) {
+                path.append(File.pathSeparatorChar);
+            }
+            path.append(element);
+        }
+        command.add(path.toString());
+
+        logFile.getParentFile().mkdirs();
+        Process process =
+                new ProcessBuilder(command).redirectErrorStream(true)
+                        .redirectOutput(logFile)
+                        .start();
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException ie) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while dumping " + archiveFile, ie);
+        }
+
+        try {
+            if (exitCode != 0 || !tmpFile.isFile()) {
+                throw new IOException("Archive JVM exited with code "
+                        + exitCode + ", see " + logFile);
+            }
+
+            Files.move(
+                    tmpFile.toPath(), archiveFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+/**
+ * Typed access to the ProActive stub generation, bound once to the classes
+ * of a project class loader.
+ *
+ * @author lpellegr
+ */
+public interface StubGeneratorAdapter {
+
+    /**
+     * Returns the name of the stub of the specified class.
+     */
+    String getStubClassName(String className) throws Exception;
+
+    /**
+     * Returns the name of the class of the specified stub.
+     */
+    String getClassName(String stubClassName) throws Exception;
+
+    /**
+     * Generates the bytecode of the stub of the specified class.
+     */
+    byte[] generateStub(String className) throws Exception;
+
+}
@@ -16,57 +16,90 @@
  **/
 package org.objectweb.proactive.mavenplugin;
 
-import java.lang.reflect.Method;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 
 import org.apache.maven.plugin.MojoExecutionException;
 
 /**
- * Mojo used to create ProActive stubs for the specified classes.
+ * Mojo used to create ProActive stubs for the specified classes. Classes are
+ * either listed explicitly or discovered among the compiled classes of the
+ * module, by package, super type or annotation.
  * 
  * @goal stubs
+ * @threadSafe
  * 
  * @author lpellegr
  * @author bsauvan
  */
 public class StubsMojo extends AbstractClassGeneratorMojo {
 
-    private static final String UTILS_CLASSNAME =
-            "org.objectweb.proactive.core.mop.Utils";
+    private static final String STUB_OBJECT_CLASSNAME =
+            "org.objectweb.proactive.core.mop.StubObject";
 
-    private static final String JAVASSIST_BYTE_CODE_STUB_BUILDER_CLASSNAME =
-            "org.objectweb.proactive.core.mop.JavassistByteCodeStubBuilder";
+    private static final String STUB_PACKAGE_PREFIX = "pa.stub.";
 
     /**
-     * A list of inclusions when searching for classes to compile.
+     * A list of inclusions when searching for classes to compile. An inclusion
+     * is either a class name or a package pattern such as
+     * {@code org.example.*} or {@code org.example.**}, matched against the
+     * classes of the output directory.
      * 
      * @parameter
-     * @required
      */
     private List<String> includes;
 
-    private Method createMethod;
+    /**
+     * Class names or package patterns excluded from the discovered classes.
+     * 
+     * @parameter
+     */
+    private List<String> excludes;
+
+    /**
+     * Names of the classes or interfaces whose subtypes found in the output
+     * directory are included.
+     * 
+     * @parameter
+     */
+    private List<String> implementing;
+
+    /**
+     * Names of the annotations whose annotated classes found in the output
+     * directory are included.
+     * 
+     * @parameter
+     */
+    private List<String> annotatedWith;
+
+    /**
+     * Files listing the classes whose stubs have been generated at runtime, so
+     * that they are generated at build time. A profile is a JSON document, a
+     * text file with one class or stub name per line, or a log mentioning the
+     * generated stubs.
+     * 
+     * @parameter
+     */
+    private List<File> profiles;
 
-    private Method convertClassNameToStubClassNameMethod;
+    private StubGeneratorAdapter adapter;
 
-    private Method convertStubClassNameToClassNameMethod;
+    private Map<String, String> objectClassNames;
 
     protected void init() throws MojoExecutionException {
         try {
-            Class<?> utilsClass = this.classLoader.loadClass(UTILS_CLASSNAME);
-            this.convertClassNameToStubClassNameMethod =
-                    utilsClass.getMethod(
-                            "convertClassNameToStubClassName", String.class,
-                            Class[].class);
-            this.convertStubClassNameToClassNameMethod =
-                    utilsClass.getMethod(
-                            "convertStubClassNameToClassName", String.class);
-            Class<?> javassistByteCodeStubBuilderClass =
-                    this.classLoader.loadClass(JAVASSIST_BYTE_CODE_STUB_BUILDER_CLASSNAME);
-            this.createMethod =
-                    javassistByteCodeStubBuilderClass.getMethod(
-                            "create", String.class, Class[].class);
+            this.adapter =
+                    ProActiveAdapters.bindStubGenerator(this.classLoader);
         } catch (ClassNotFoundException cnfe) {
             throw new MojoExecutionException(
                     "ProActive Programming is not a dependency or a transitive dependency of the current module");
@@ -75,37 +108,322 @@ public class StubsMojo extends AbstractClassGeneratorMojo {
         }
     }
 
+    protected void releaseExecutionState() {
+        this.adapter = null;
+        this.objectClassNames = null;
+    }
+
     protected List<String> getClassNames() throws MojoExecutionException {
         try {
             List<String> classNames = new ArrayList<String>();
+            this.objectClassNames = new HashMap<String, String>();
 
-            for (String include : this.includes) {
-                classNames.add(this.getStubClassName(include));
+            Set<String> objectClassNames = this.getObjectClassNames();
+            if (!isEmpty(this.profiles)) {
+                this.addProfiledClassNames(objectClassNames);
+            }
+
+            for (String objectClassName : objectClassNames) {
+                String stubClassName = this.getStubClassName(objectClassName);
+                classNames.add(stubClassName);
+                this.objectClassNames.put(stubClassName, objectClassName);
             }
 
             return classNames;
+        } catch (MojoExecutionException mee) {
+            throw mee;
         } catch (Exception e) {
             throw new MojoExecutionException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Returns the classes listed explicitly followed by the classes selected
+     * among the classes of the output directory.
+     */
+    private Set<String> getObjectClassNames() throws MojoExecutionException {
+        Set<String> objectClassNames = new LinkedHashSet<String>();
+        List<String> packagePatterns = new ArrayList<String>();
+
+        if (this.includes != null) {
+            for (String include : this.includes) {
+                if (isPattern(include)) {
+                    packagePatterns.add(toResourcePattern(include));
+                } else {
+                    objectClassNames.add(include.trim());
+                }
+            }
+        }
+
+        if (packagePatterns.isEmpty() && isEmpty(this.implementing)
+                && isEmpty(this.annotatedWith)) {
+            return objectClassNames;
+        }
+
+        SortedMap<String, ClassFileHeader> headers;
+        try {
+            headers =
+                    ClassScanner.scan(
+                            this.outputDirectory, this.getDiscoveryThreads());
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Failed to scan "
+                    + this.outputDirectory, ioe);
+        }
+
+        ResourcePatterns packageMatcher =
+                new ResourcePatterns(packagePatterns, null);
+        List<String> excludePatterns = new ArrayList<String>();
+        if (this.excludes != null) {
+            for (String exclude : this.excludes) {
+                excludePatterns.add(toResourcePattern(exclude));
+            }
+        }
+        ResourcePatterns excludeMatcher =
+                new ResourcePatterns(excludePatterns, null);
+        Map<String, ClassFileHeader> superTypeHeaders =
+                new HashMap<String, ClassFileHeader>(headers);
+
+        int discovered = 0;
+        for (ClassFileHeader header : headers.values()) {
+            String resourceName = header.getClassName().replace('.', '/');
+
+            if (!isStubbable(header) || excludeMatcher.matches(resourceName)) {
+                continue;
+            }
+
+            if (packageMatcher.matches(resourceName)
+                    || this.isAnnotated(header)
+                    || this.isSubtype(header, superTypeHeaders)) {
+                if (objectClassNames.add(header.getClassName())) {
+                    discovered++;
+                }
+            }
+        }
+
+        this.getLog().info(
+                "Discovered " + discovered + " classes among the "
+                        + headers.size() + " classes of "
+                        + this.outputDirectory);
+
+        return objectClassNames;
+    }
+
+    /**
+     * Adds the classes listed by the runtime profiles and reports the classes
+     * listed explicitly which have not been used at runtime.
+     */
+    private void addProfiledClassNames(Set<String> objectClassNames)
+            throws Exception {
+        Set<String> profiledClassNames = new LinkedHashSet<String>();
+
+        for (File profile : this.profiles) {
+            Set<String> names;
+            try {
+                names = RuntimeProfile.read(profile);
+            } catch (IOException ioe) {
+                throw new MojoExecutionException("Failed to read profile "
+                        + profile, ioe);
+            }
+
+            for (String name : names) {
+                if (name.startsWith(STUB_PACKAGE_PREFIX)) {
+                    name = this.adapter.getClassName(name);
+                }
+                profiledClassNames.add(name);
+            }
+        }
+
+        int added = 0;
+        int missing = 0;
+        for (String className : profiledClassNames) {
+            if (objectClassNames.contains(className)) {
+                continue;
+            }
+
+            // profiles may mention classes of other applications
+            if (Util.readClass(this.classLoader, className) == null) {
+                missing++;
+                if (this.getLog().isDebugEnabled()) {
+                    this.getLog().debug(
+                            "Ignored profiled class " + className
+                                    + " which is not on the classpath");
+                }
+                continue;
+            }
+
+            objectClassNames.add(className);
+            added++;
+        }
+
+        this.getLog().info(
+                "Added " + added + " classes from the runtime profiles ("
+                        + missing + " not on the classpath)");
+
+        if (this.includes != null) {
+            List<String> unusedIncludes = new ArrayList<String>();
+            for (String include : this.includes) {
+                if (!isPattern(include)
+                        && !profiledClassNames.contains(include.trim())) {
+                    unusedIncludes.add(include.trim());
+                }
+            }
+
+            if (!unusedIncludes.isEmpty()) {
+                this.getLog().warn(
+                        unusedIncludes.size()
+                                + " included classes have not been used at runtime: "
+                                + unusedIncludes);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a stub can be generated for the specified class.
+     * Stubs generated by previous builds are also ignored.
+     */
+    private static boolean isStubbable(ClassFileHeader header) {
+        return header.hasAccessFlag(ClassFileHeader.ACC_PUBLIC)
+                && !header.hasAccessFlag(ClassFileHeader.ACC_ANNOTATION
+                        | ClassFileHeader.ACC_ENUM
+                        | ClassFileHeader.ACC_SYNTHETIC)
+                && (header.hasAccessFlag(ClassFileHeader.ACC_INTERFACE)
+                        || !header.hasAccessFlag(ClassFileHeader.ACC_FINAL))
+                && !header.getClassName().startsWith(STUB_PACKAGE_PREFIX)
+                && !header.getInterfaceNames().contains(STUB_OBJECT_CLASSNAME);
+    }
+
+    private boolean isAnnotated(ClassFileHeader header) {
+        if (isEmpty(this.annotatedWith)) {
+            return false;
+        }
+
+        for (String annotationName : header.getAnnotationNames()) {
+            if (this.annotatedWith.contains(annotationName)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Indicates whether the specified class is a subtype of one of the
+     * {@code implementing} types. Super types which are not in the output
+     * directory are read from the project classpath, without being loaded,
+     * and their headers are kept in the specified map.
+     */
+    private boolean isSubtype(ClassFileHeader header,
+                              Map<String, ClassFileHeader> headers) {
+        if (isEmpty(this.implementing)) {
+            return false;
+        }
+
+        Set<String> visited = new HashSet<String>();
+        LinkedList<ClassFileHeader> pending = new LinkedList<ClassFileHeader>();
+        pending.add(header);
+
+        while (!pending.isEmpty()) {
+            ClassFileHeader current = pending.removeFirst();
+
+            List<String> superTypeNames =
+                    new ArrayList<String>(current.getInterfaceNames());
+            if (current.getSuperClassName() != null) {
+                superTypeNames.add(current.getSuperClassName());
+            }
+
+            for (String superTypeName : superTypeNames) {
+                if (this.implementing.contains(superTypeName)) {
+                    return true;
+                }
+                if (!visited.add(superTypeName)
+                        || superTypeName.startsWith("java.")) {
+                    continue;
+                }
+
+                ClassFileHeader superTypeHeader =
+                        this.getHeader(superTypeName, headers);
+                if (superTypeHeader != null) {
+                    pending.add(superTypeHeader);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private ClassFileHeader getHeader(String className,
+                                      Map<String, ClassFileHeader> headers) {
+        if (headers.containsKey(className)) {
+            return headers.get(className);
+        }
+
+        ClassFileHeader header = null;
+        try {
+            byte[] bytecode = Util.readClass(this.classLoader, className);
+            if (bytecode != null) {
+                header = ClassFileHeader.parse(bytecode);
+            }
+        } catch (IOException ioe) {
+            if (this.getLog().isDebugEnabled()) {
+                this.getLog().debug("Cannot read " + className, ioe);
+            }
+        }
+        headers.put(className, header);
+
+        return header;
+    }
+
+    private static boolean isPattern(String include) {
+        return include.indexOf('*') >= 0 || include.indexOf('?') >= 0;
+    }
+
+    private static String toResourcePattern(String pattern) {
+        return pattern.trim().replace('.', '/');
+    }
+
+    private static boolean isEmpty(List<?> list) {
+        return list == null || list.isEmpty();
+    }
+
     private String getStubClassName(String className) throws Exception {
-        return (String) (this.convertClassNameToStubClassNameMethod.invoke(
-                null, className, null));
+        return this.adapter.getStubClassName(className);
     }
 
-    protected byte[] generateClass(String className) throws Exception {
-        return (byte[]) (this.createMethod.invoke(
-                null, this.getObjectClassName(className), null));
+    protected List<String> getSourceClassNames(String className) {
+        return Collections.singletonList(this.objectClassNames.get(className));
     }
 
-    private String getObjectClassName(String stubClassName) throws Exception {
-        return (String) (this.convertStubClassNameToClassNameMethod.invoke(
-                null, stubClassName));
+    protected ClassGeneratorPool.Factory getGeneratorFactory() {
+        return new GeneratorFactory();
+    }
+
+    /**
+     * Creates the stub generators.
+     */
+    public static class GeneratorFactory implements ClassGeneratorPool.Factory {
+
+        @Override
+        public ClassGenerator createGenerator(ClassLoader classLoader)
+                throws Exception {
+            final StubGeneratorAdapter adapter =
+                    ProActiveAdapters.bindStubGenerator(classLoader);
+
+            return new ClassGenerator() {
+                @Override
+                public byte[] generateClass(String className) throws Exception {
+                    return adapter.generateStub(adapter.getClassName(className));
+                }
+            };
+        }
+
     }
 
     protected String getKind() {
         return "ProActive stub";
     }
 
+    protected String getGoal() {
+        return "stubs";
+    }
+
 }
@@ -16,11 +16,23 @@
  **/
 package org.objectweb.proactive.mavenplugin;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.maven.execution.MavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
 
 /**
  * Some convenient methods.
@@ -43,4 +55,103 @@ public class Util {
         return new URLClassLoader(classpathUrls);
     }
 
+    /**
+     * Reads the bytecode of the specified class from the resources of the
+     * class loader, without loading the class. Returns {@code null} if the
+     * class cannot be found.
+     */
+    public static byte[] readClass(ClassLoader classLoader, String className)
+            throws IOException {
+        InputStream in =
+                classLoader.getResourceAsStream(className.replace('.', '/')
+                        + ".class");
+        if (in == null) {
+            return null;
+        }
+
+        try {
+            return readFully(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens a stream on the specified URL without going through the JDK cache
+     * of jar files, which would keep the jars open until the end of the
+     * build.
+     */
+    public static InputStream openStream(URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+
+        return connection.getInputStream();
+    }
+
+    public static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Indicates whether all the projects of the specified session are built,
+     * whatever their order of completion, i.e. whether the resources shared
+     * by the modules can be released. A failed session is considered
+     * completed since the projects skipped after a failure are never built.
+     */
+    public static boolean isSessionCompleted(MavenSession session) {
+        List<MavenProject> projects = session.getProjects();
+        MavenExecutionResult result = session.getResult();
+
+        if (projects == null || result == null || result.hasExceptions()) {
+            return true;
+        }
+
+        for (MavenProject project : projects) {
+            if (result.getBuildSummary(project) == null) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public static <T> Future<T> completedFuture(final T value) {
+        FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() {
+                return value;
+            }
+        });
+        future.run();
+
+        return future;
+    }
+
+    public static String toHexString(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16));
+            result.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return result.toString();
+    }
+
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ioe) {
+                // ignored
+            }
+        }
+    }
+
 }
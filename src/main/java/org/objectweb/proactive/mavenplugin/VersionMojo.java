@@ -16,22 +16,24 @@
  **/
 package org.objectweb.proactive.mavenplugin;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.net.URLClassLoader;
+import java.io.IOException;
 import java.util.List;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
 
 /**
  * Retrieves the version of the ProActive Programming dependency used in the
- * module on which the goal is executed.
+ * module on which the goal is executed, without loading it, and publishes it
+ * as the {@code proactive.detectedVersion} project property.
  * 
  * @goal version
  * @requiresDependencyResolution compile+runtime
  * @requiresDirectInvocation true
+ * @threadSafe
  * 
  * @author lpellegr
  */
@@ -45,40 +47,64 @@ public class VersionMojo extends AbstractMojo {
      */
     private List<String> projectClasspathElements;
 
+    /**
+     * @parameter expression="${session}"
+     * @readonly
+     * @required
+     */
+    private MavenSession session;
+
+    /**
+     * @parameter expression="${project}"
+     * @readonly
+     * @required
+     */
+    private MavenProject project;
+
+    /**
+     * Range of the ProActive Programming versions supported by the module, in
+     * the Maven version range syntax. The goal fails if the version in use is
+     * not in the range. Any version is accepted if it is not set.
+     * 
+     * @parameter expression="${proactive.versionRange}"
+     */
+    private String proactiveVersionRange;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
-        URLClassLoader classLoader =
-                Util.createClassLoader(this.projectClasspathElements);
-
-        Class<?> paVersionClass;
+        String version;
         try {
-            paVersionClass =
-                    classLoader.loadClass("org.objectweb.proactive.api.PAVersion");
-            Method getProActiveVersionMethod =
-                    paVersionClass.getMethod("getProActiveVersion");
+            ClasspathIndex classpathIndex =
+                    ClasspathIndex.build(this.projectClasspathElements);
+            if (!classpathIndex.containsClass(ProActiveVersion.PAVERSION_CLASSNAME)) {
+                super.getLog()
+                        .info(
+                                "ProActive Programming is not a dependency or a transitive dependency of the current module");
+                return;
+            }
 
-            super.getLog().info(
-                    "ProActive Programming "
-                            + getProActiveVersionMethod.invoke(null)
-                            + " detected");
-        } catch (ClassNotFoundException e) {
-            super.getLog()
-                    .info(
-                            "ProActive Programming is not a dependency or a transitive dependency of the current module");
-        } catch (SecurityException e) {
-            throw new MojoExecutionException(e.getMessage(), e);
-        } catch (NoSuchMethodException e) {
-            throw new MojoExecutionException(e.getMessage(), e);
-        } catch (IllegalArgumentException e) {
-            throw new MojoExecutionException(e.getMessage(), e);
-        } catch (IllegalAccessException e) {
-            throw new MojoExecutionException(e.getMessage(), e);
-        } catch (InvocationTargetException e) {
+            version =
+                    ProActiveVersion.detect(
+                            this.session, this.project, classpathIndex);
+        } catch (IOException e) {
             throw new MojoExecutionException(e.getMessage(), e);
         }
+
+        if (version == null) {
+            super.getLog().info(
+                    "ProActive Programming detected, its version cannot be determined");
+        } else {
+            super.getLog().info(
+                    "ProActive Programming " + version + " detected");
+            this.project.getProperties().setProperty(
+                    ProActiveVersion.PROPERTY_NAME, version);
+        }
+
+        ProActiveVersion.checkCompatibility(
+                version, this.proactiveVersionRange);
     }
 
 }
@@ -0,0 +1,351 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MavenPluginManager;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Mojo used to regenerate the ProActive classes while the module is being
+ * developed. The goal watches the directories of the module classpath and,
+ * once the compiled classes or the ADL files change, regenerates the classes
+ * affected by the changes. The generation goals are configured as in the POM
+ * of the module and each regeneration executes them again: the classpath is
+ * indexed again except the unchanged jars, and the unchanged ADL files are not
+ * parsed again. The compiled classes of the module change on each
+ * regeneration, so that the class loader and the generators of the previous
+ * one are discarded: a regeneration starts from a new class loader over the
+ * dependencies, only the classes whose dependencies have changed being
+ * generated.
+ * 
+ * @goal watch
+ * @requiresDependencyResolution compile+runtime
+ * 
+ * @author lpellegr
+ */
+public class WatchMojo extends AbstractMojo {
+
+    /**
+     * Generation goals to execute on changes, separated by commas. Defaults
+     * to the generation goals bound to the module in its POM.
+     * 
+     * @parameter expression="${proactive.watchGoals}"
+     */
+    private String watchGoals;
+
+    /**
+     * Number of milliseconds without changes after which the changes are
+     * processed, so that a compilation triggers a single regeneration.
+     * 
+     * @parameter expression="${proactive.watchDebounce}" default-value="100"
+     */
+    private int watchDebounce;
+
+    /**
+     * @parameter expression="${mojoExecution}"
+     * @readonly
+     * @required
+     */
+    private MojoExecution mojoExecution;
+
+    /**
+     * @parameter expression="${session}"
+     * @readonly
+     * @required
+     */
+    private MavenSession session;
+
+    /**
+     * @parameter expression="${project}"
+     * @readonly
+     * @required
+     */
+    private MavenProject project;
+
+    /**
+     * @component
+     */
+    private MavenPluginManager pluginManager;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        Map<MojoExecution, AbstractClassGeneratorMojo> mojos =
+                new LinkedHashMap<MojoExecution, AbstractClassGeneratorMojo>();
+        WatchService watchService = null;
+
+        // the idle class loaders are closed once the goal ends
+        ClassLoaderCache.beginExecution(this.session);
+        try {
+            for (String goal : this.getGoals()) {
+                MojoExecution execution =
+                        GenerationGoals.createExecution(
+                                this.getPluginDescriptor(),
+                                GenerationGoals.getPlugin(
+                                        this.getPluginDescriptor(),
+                                        this.project), goal, "watch-" + goal);
+                AbstractClassGeneratorMojo mojo =
+                        GenerationGoals.createMojo(
+                                this.pluginManager, this.session, execution);
+                mojo.retainClasspathIndex = true;
+                mojos.put(execution, mojo);
+            }
+
+            Set<String> generatedClassNames = this.generate(mojos.values());
+
+            Set<Path> directories = new LinkedHashSet<Path>();
+            for (AbstractClassGeneratorMojo mojo : mojos.values()) {
+                for (File directory : mojo.getWatchedDirectories()) {
+                    directories.add(directory.toPath().toAbsolutePath());
+                }
+            }
+
+            watchService = FileSystems.getDefault().newWatchService();
+            Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+            for (Path directory : directories) {
+                if (Files.isDirectory(directory)) {
+                    register(watchService, keys, directory);
+                }
+            }
+            this.getLog().info(
+                    "Watching " + directories.size()
+                            + " directories for changes");
+
+            while (true) {
+                Set<Path> changes = new LinkedHashSet<Path>();
+
+                // changes are collected until none occurs for the debounce
+                // delay, so that a compilation triggers a single regeneration
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    this.collectChanges(
+                            watchService, keys, key, directories,
+                            generatedClassNames, changes);
+                    key =
+                            watchService.poll(
+                                    this.watchDebounce, TimeUnit.MILLISECONDS);
+                }
+
+                if (changes.isEmpty()) {
+                    continue;
+                }
+
+                if (this.getLog().isDebugEnabled()) {
+                    this.getLog().debug("Changed files: " + changes);
+                }
+                this.getLog().info(
+                        changes.size() + " file(s) changed, regenerating");
+                long start = System.nanoTime();
+                generatedClassNames = this.generate(mojos.values());
+                this.getLog().info(
+                        "Regenerated in " + (System.nanoTime() - start)
+                                / 1000000 + " ms");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ioe) {
+            throw new MojoExecutionException(
+                    "Failed to watch the module directories", ioe);
+        } finally {
+            Util.closeQuietly(watchService);
+            for (Map.Entry<MojoExecution, AbstractClassGeneratorMojo> entry : mojos.entrySet()) {
+                this.pluginManager.releaseMojo(entry.getValue(), entry.getKey());
+            }
+            ClassLoaderCache.endExecution(this.session);
+        }
+    }
+
+    /**
+     * Executes the generation goals and returns the names of the classes
+     * they generated. A failure is logged, the next changes being likely to
+     * fix it.
+     */
+    private Set<String> generate(Iterable<AbstractClassGeneratorMojo> mojos) {
+        Set<String> generatedClassNames = new HashSet<String>();
+
+        for (AbstractClassGeneratorMojo mojo : mojos) {
+            try {
+                mojo.execute();
+            } catch (MojoExecutionException mee) {
+                this.getLog().error(mee.getMessage(), mee);
+            } catch (MojoFailureException mfe) {
+                this.getLog().error(mfe.getMessage(), mfe);
+            }
+
+            generatedClassNames.addAll(DependencyIndex.load(
+                    mojo.getIndexFile()).getClassNames());
+        }
+
+        return generatedClassNames;
+    }
+
+    /**
+     * Adds the files changed according to the events of the specified key.
+     * Changes of the generated classes are ignored, and new directories are
+     * watched.
+     */
+    private void collectChanges(WatchService watchService,
+                                Map<WatchKey, Path> keys, WatchKey key,
+                                Set<Path> directories,
+                                Set<String> generatedClassNames,
+                                Set<Path> changes) throws IOException {
+        Path directory = keys.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // some events are lost, the whole classpath is checked anyway
+                changes.add(directory != null
+                        ? directory : directories.iterator().next());
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(path)) {
+                // files may have been created before the directory is watched
+                register(watchService, keys, path);
+                changes.add(path);
+                continue;
+            }
+
+            String fileName = path.getFileName().toString();
+            if ((fileName.endsWith(".class") || fileName.endsWith(".fractal"))
+                    && !isGenerated(path, directories, generatedClassNames)) {
+                changes.add(path);
+            }
+        }
+
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    private static boolean isGenerated(Path path, Set<Path> directories,
+                                       Set<String> generatedClassNames) {
+        String fileName = path.getFileName().toString();
+        if (!fileName.endsWith(".class")) {
+            return false;
+        }
+
+        for (Path directory : directories) {
+            if (path.startsWith(directory)) {
+                String resourceName =
+                        directory.relativize(path).toString().replace(
+                                File.separatorChar, '/');
+                String className =
+                        resourceName.substring(
+                                0, resourceName.length() - ".class".length())
+                                .replace('/', '.');
+                if (generatedClassNames.contains(className)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static void register(final WatchService watchService,
+                                 final Map<WatchKey, Path> keys, Path root)
+            throws IOException {
+        final WatchEvent.Modifier[] modifiers = getModifiers();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory,
+                                                     BasicFileAttributes attributes)
+                    throws IOException {
+                keys.put(directory.register(
+                        watchService, new WatchEvent.Kind<?>[] {
+                                StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY,
+                                StandardWatchEventKinds.ENTRY_DELETE},
+                        modifiers), directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Returns the modifiers making the watch service as responsive as
+     * possible on the platforms where it polls the file system, every ten
+     * seconds by default.
+     */
+    private static WatchEvent.Modifier[] getModifiers() {
+        try {
+            Class<?> modifierClass =
+                    Class.forName("com.sun.nio.file.SensitivityWatchEventModifier");
+            return new WatchEvent.Modifier[] {(WatchEvent.Modifier) modifierClass.getField(
+                    "HIGH").get(null)};
+        } catch (Exception e) {
+            return new WatchEvent.Modifier[0];
+        }
+    }
+
+    private List<String> getGoals() throws MojoExecutionException {
+        if (this.watchGoals != null && !this.watchGoals.trim().isEmpty()) {
+            return GenerationGoals.parse(this.watchGoals);
+        }
+
+        List<String> goals =
+                GenerationGoals.getBoundGoals(GenerationGoals.getPlugin(
+                        this.getPluginDescriptor(), this.project));
+        if (goals.isEmpty()) {
+            throw new MojoExecutionException(
+                    "No generation goal is bound to the module, set proactive.watchGoals");
+        }
+
+        return goals;
+    }
+
+    private PluginDescriptor getPluginDescriptor() {
+        return this.mojoExecution.getMojoDescriptor().getPluginDescriptor();
+    }
+
+}
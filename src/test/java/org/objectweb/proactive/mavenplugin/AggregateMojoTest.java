@@ -0,0 +1,197 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the assignment of the classes discovered by the modules of the
+ * reactor in {@link AggregateMojo}.
+ *
+ * @author lpellegr
+ */
+public class AggregateMojoTest {
+
+    private static final String STUB = "pa.stub.app._StubService";
+
+    private static final String SOURCE = "app.Service";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MavenProject createProject(String artifactId,
+                                       MavenProject... dependencies)
+            throws Exception {
+        MavenProject project = new MavenProject();
+        project.setGroupId("org.example");
+        project.setArtifactId(artifactId);
+        project.setVersion("1.0");
+        project.getBuild().setOutputDirectory(
+                this.folder.newFolder(artifactId).getPath());
+
+        Set<Artifact> artifacts = new HashSet<Artifact>();
+        for (MavenProject dependency : dependencies) {
+            artifacts.add(new DefaultArtifact(
+                    dependency.getGroupId(), dependency.getArtifactId(),
+                    dependency.getVersion(), Artifact.SCOPE_COMPILE, "jar",
+                    null, new DefaultArtifactHandler("jar")));
+            artifacts.addAll(dependency.getArtifacts());
+        }
+        project.setArtifacts(artifacts);
+
+        return project;
+    }
+
+    private static AggregateMojo.Module createModule(MavenProject project,
+                                                     String... classNames) {
+        Map<String, List<String>> sourceClassNames =
+                new LinkedHashMap<String, List<String>>();
+        for (String className : classNames) {
+            sourceClassNames.put(className, Collections.singletonList(SOURCE));
+        }
+
+        AggregateMojo.Module module =
+                new AggregateMojo.Module(project, "stubs", null, null);
+        module.targets =
+                new AbstractClassGeneratorMojo.Targets(
+                        "5.2.0", sourceClassNames);
+
+        return module;
+    }
+
+    private static void addSourceClass(MavenProject project) throws Exception {
+        File classFile =
+                new File(project.getBuild().getOutputDirectory(), SOURCE.replace(
+                        '.', File.separatorChar)
+                        + ".class");
+        assertTrue(classFile.getParentFile().mkdirs());
+        assertTrue(classFile.createNewFile());
+    }
+
+    @Test
+    public void testModuleOwningSourceClassWins() throws Exception {
+        MavenProject core = this.createProject("core");
+        MavenProject app = this.createProject("app", core);
+        addSourceClass(app);
+
+        AggregateMojo.Module coreModule = createModule(core, STUB);
+        AggregateMojo.Module appModule = createModule(app, STUB);
+
+        assertEquals(1, AggregateMojo.assign(Arrays.asList(coreModule, appModule)));
+        assertTrue(coreModule.assignedClassNames.isEmpty());
+        assertEquals(
+                Collections.singletonList(SOURCE),
+                appModule.assignedClassNames.get(STUB));
+    }
+
+    @Test
+    public void testUpstreamModuleIsShared() throws Exception {
+        MavenProject core = this.createProject("core");
+        MavenProject web = this.createProject("web", core);
+        MavenProject batch = this.createProject("batch", core);
+
+        AggregateMojo.Module coreModule = createModule(core, STUB);
+        AggregateMojo.Module webModule = createModule(web, STUB);
+        AggregateMojo.Module batchModule = createModule(batch, STUB);
+
+        // the upstream module is not necessarily the first one
+        assertEquals(1, AggregateMojo.assign(Arrays.asList(
+                webModule, batchModule, coreModule)));
+        assertEquals(
+                Collections.singleton(STUB),
+                coreModule.assignedClassNames.keySet());
+        assertTrue(webModule.assignedClassNames.isEmpty());
+        assertTrue(batchModule.assignedClassNames.isEmpty());
+    }
+
+    @Test
+    public void testTransitiveUpstreamModuleIsShared() throws Exception {
+        MavenProject core = this.createProject("core");
+        MavenProject service = this.createProject("service", core);
+        MavenProject web = this.createProject("web", service);
+
+        AggregateMojo.Module coreModule = createModule(core, STUB);
+        AggregateMojo.Module webModule = createModule(web, STUB);
+
+        assertEquals(1, AggregateMojo.assign(Arrays.asList(
+                coreModule, webModule)));
+        assertEquals(
+                Collections.singleton(STUB),
+                coreModule.assignedClassNames.keySet());
+        assertTrue(webModule.assignedClassNames.isEmpty());
+    }
+
+    @Test
+    public void testSiblingModulesGetCopies() throws Exception {
+        MavenProject core = this.createProject("core");
+        MavenProject web = this.createProject("web", core);
+        MavenProject batch = this.createProject("batch", core);
+
+        // the common dependency does not require the class
+        AggregateMojo.Module coreModule = createModule(core);
+        AggregateMojo.Module webModule = createModule(web, STUB);
+        AggregateMojo.Module batchModule = createModule(batch, STUB);
+
+        assertEquals(2, AggregateMojo.assign(Arrays.asList(
+                coreModule, webModule, batchModule)));
+        assertTrue(coreModule.assignedClassNames.isEmpty());
+        assertEquals(
+                Collections.singleton(STUB),
+                webModule.assignedClassNames.keySet());
+        assertEquals(
+                Collections.singleton(STUB),
+                batchModule.assignedClassNames.keySet());
+    }
+
+    @Test
+    public void testClassesAreAssignedPerClass() throws Exception {
+        String otherStub = "pa.stub.app._StubOther";
+        MavenProject core = this.createProject("core");
+        MavenProject web = this.createProject("web", core);
+
+        AggregateMojo.Module coreModule = createModule(core, STUB);
+        AggregateMojo.Module webModule = createModule(web, STUB, otherStub);
+
+        assertEquals(2, AggregateMojo.assign(Arrays.asList(
+                coreModule, webModule)));
+        assertEquals(
+                Collections.singleton(STUB),
+                coreModule.assignedClassNames.keySet());
+        assertEquals(
+                Collections.singleton(otherStub),
+                webModule.assignedClassNames.keySet());
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link ClassGeneratorPool}.
+ *
+ * @author lpellegr
+ */
+public class ClassGeneratorPoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<String> getClasspathElements() {
+        return Collections.singletonList(this.folder.getRoot().getPath());
+    }
+
+    @Test
+    public void testShutdownWaitsForRunningGenerations() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final AtomicBoolean shutdown = new AtomicBoolean();
+        final AtomicBoolean releasedWhileRunning = new AtomicBoolean();
+
+        final ClassGeneratorPool pool =
+                new ClassGeneratorPool(
+                        this.getClasspathElements(), 1, false,
+                        new ClassGeneratorPool.Factory() {
+                            @Override
+                            public ClassGenerator createGenerator(ClassLoader classLoader) {
+                                return new ClassGenerator() {
+                                    @Override
+                                    public byte[] generateClass(String className)
+                                            throws Exception {
+                                        started.countDown();
+                                        resume.await();
+                                        releasedWhileRunning.set(shutdown.get());
+                                        return new byte[] {1};
+                                    }
+                                };
+                            }
+                        });
+
+        List<Future<byte[]>> results =
+                pool.submit(Arrays.asList("a.A", "b.B", "c.C"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        Thread shutdownThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pool.shutdown();
+                    shutdown.set(true);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        shutdownThread.start();
+
+        // the running generation keeps the pool from shutting down
+        shutdownThread.join(200);
+        assertTrue(shutdownThread.isAlive());
+
+        resume.countDown();
+        shutdownThread.join(10000);
+        assertFalse(shutdownThread.isAlive());
+        assertTrue(shutdown.get());
+        assertFalse(releasedWhileRunning.get());
+
+        assertArrayEquals(new byte[] {1}, results.get(0).get());
+        assertTrue(results.get(1).isCancelled());
+        assertTrue(results.get(2).isCancelled());
+    }
+
+    @Test
+    public void testContextClassLoaderIsRestoredAfterGenerations()
+            throws Exception {
+        final ClassLoader otherClassLoader = new ClassLoader() {
+        };
+        final AtomicBoolean wrongClassLoader = new AtomicBoolean();
+        final Set<Thread> workers =
+                Collections.synchronizedSet(new HashSet<Thread>());
+
+        ClassGeneratorPool pool =
+                new ClassGeneratorPool(
+                        this.getClasspathElements(), 2, false,
+                        new ClassGeneratorPool.Factory() {
+                            @Override
+                            public ClassGenerator createGenerator(final ClassLoader classLoader) {
+                                return new ClassGenerator() {
+                                    @Override
+                                    public byte[] generateClass(String className) {
+                                        Thread currentThread = Thread.currentThread();
+                                        workers.add(currentThread);
+                                        if (currentThread.getContextClassLoader() != classLoader) {
+                                            wrongClassLoader.set(true);
+                                        }
+                                        // a generator changing it must not leak
+                                        currentThread.setContextClassLoader(otherClassLoader);
+                                        return new byte[] {(byte) className.length()};
+                                    }
+                                };
+                            }
+                        });
+
+        try {
+            List<String> classNames = new ArrayList<String>();
+            for (int i = 0; i < 100; i++) {
+                classNames.add("pa.stub._Stub" + i);
+            }
+            for (Future<byte[]> result : pool.submit(classNames)) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertFalse(wrongClassLoader.get());
+        assertFalse(workers.isEmpty());
+        ClassLoader contextClassLoader =
+                Thread.currentThread().getContextClassLoader();
+        for (Thread worker : workers) {
+            assertSame(contextClassLoader, worker.getContextClassLoader());
+        }
+    }
+
+}
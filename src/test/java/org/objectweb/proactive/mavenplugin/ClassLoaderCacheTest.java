@@ -0,0 +1,331 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link ClassLoaderCache} and {@link ClassGeneratorPool} under
+ * concurrent use: a shared class loader must never be leased by two
+ * executions at once, and the context class loader of every thread must be
+ * restored.
+ *
+ * @author lpellegr
+ */
+public class ClassLoaderCacheTest {
+
+    private static final int THREADS = 16;
+
+    private static final int ITERATIONS = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<String> classpathElements;
+
+    // shared class loaders currently leased, keyed by identity
+    private final Set<ClassLoader> leased =
+            Collections.newSetFromMap(new ConcurrentHashMap<ClassLoader, Boolean>());
+
+    @Before
+    public void createClasspath() throws Exception {
+        File jarFile = this.folder.newFile("dependency.jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            out.putNextEntry(new ZipEntry("dependency/Resource.txt"));
+            out.write(1);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+
+        this.classpathElements =
+                Arrays.asList(
+                        this.folder.newFolder("classes").getPath(),
+                        jarFile.getPath());
+    }
+
+    @After
+    public void closeClassLoaders() {
+        ClassLoaderCache.closeIdle();
+    }
+
+    /**
+     * Marks the shared class loader of the specified lease as leased, failing
+     * if it already is.
+     */
+    private void lease(ClassLoader classLoader) {
+        assertTrue(
+                "Shared class loader leased twice",
+                this.leased.add(classLoader.getParent()));
+    }
+
+    private void release(ClassLoader classLoader) {
+        assertTrue(this.leased.remove(classLoader.getParent()));
+    }
+
+    @Test
+    public void testConcurrentAcquireAndRelease() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Set<ClassLoader> sharedClassLoaders =
+                Collections.newSetFromMap(new ConcurrentHashMap<ClassLoader, Boolean>());
+
+        List<Future<Void>> futures =
+                this.runConcurrently(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            ClassLoaderCache.Lease lease =
+                                    ClassLoaderCache.acquire(ClassLoaderCacheTest.this.classpathElements);
+                            try {
+                                ClassLoader classLoader = lease.getClassLoader();
+                                ClassLoaderCacheTest.this.lease(classLoader);
+                                sharedClassLoaders.add(classLoader.getParent());
+                                assertTrue(classLoader.getResource("dependency/Resource.txt") != null);
+                                Thread.yield();
+                                ClassLoaderCacheTest.this.release(classLoader);
+                            } finally {
+                                lease.close();
+                            }
+                        }
+                        return null;
+                    }
+                }, start);
+
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+
+        assertTrue(this.leased.isEmpty());
+        // the layers are reused once released
+        assertTrue(sharedClassLoaders.size() <= THREADS);
+
+        ClassLoaderCache.Lease lease =
+                ClassLoaderCache.acquire(this.classpathElements);
+        try {
+            assertTrue(sharedClassLoaders.contains(lease.getClassLoader()
+                    .getParent()));
+        } finally {
+            lease.close();
+        }
+    }
+
+    @Test
+    public void testSequentialExecutionsShareClassLoader() throws Exception {
+        ClassLoader sharedClassLoader;
+        ClassLoaderCache.Lease lease =
+                ClassLoaderCache.acquire(this.classpathElements);
+        try {
+            sharedClassLoader = lease.getClassLoader().getParent();
+
+            ClassLoaderCache.Lease concurrentLease =
+                    ClassLoaderCache.acquire(this.classpathElements);
+            try {
+                assertNotSame(
+                        sharedClassLoader,
+                        concurrentLease.getClassLoader().getParent());
+            } finally {
+                concurrentLease.close();
+            }
+        } finally {
+            lease.close();
+        }
+
+        lease = ClassLoaderCache.acquire(this.classpathElements);
+        try {
+            assertSame(sharedClassLoader, lease.getClassLoader().getParent());
+        } finally {
+            lease.close();
+        }
+    }
+
+    @Test
+    public void testChangedDirectoryRecyclesClassLoader() throws Exception {
+        ClassLoader sharedClassLoader;
+        ClassLoaderCache.Lease lease =
+                ClassLoaderCache.acquire(this.classpathElements);
+        try {
+            sharedClassLoader = lease.getClassLoader().getParent();
+        } finally {
+            lease.close();
+        }
+
+        File classFile = new File(this.classpathElements.get(0), "A.class");
+        assertTrue(classFile.createNewFile());
+
+        lease = ClassLoaderCache.acquire(this.classpathElements);
+        try {
+            assertNotSame(sharedClassLoader, lease.getClassLoader().getParent());
+        } finally {
+            lease.close();
+        }
+    }
+
+    @Test
+    public void testClassesWrittenByExecutionKeepClassLoader()
+            throws Exception {
+        ClassLoaderCache.DirectoryState directoryState =
+                new ClassLoaderCache.DirectoryState(this.classpathElements);
+        ClassLoader sharedClassLoader;
+        ClassLoaderCache.Lease lease =
+                ClassLoaderCache.acquire(this.classpathElements, directoryState);
+        try {
+            sharedClassLoader = lease.getClassLoader().getParent();
+        } finally {
+            lease.close();
+        }
+
+        // the execution writes its classes once its class loaders are
+        // released, then takes the state of the directories again
+        File classFile = new File(this.classpathElements.get(0), "_StubA.class");
+        assertTrue(classFile.createNewFile());
+        directoryState.update();
+
+        lease = ClassLoaderCache.acquire(this.classpathElements);
+        try {
+            assertSame(sharedClassLoader, lease.getClassLoader().getParent());
+        } finally {
+            lease.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentGenerations() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final ClassLoader contextClassLoader =
+                Thread.currentThread().getContextClassLoader();
+
+        // each task runs a pool with shared class loaders, as concurrent
+        // executions of the generation goals in a parallel build
+        List<Future<Void>> futures =
+                this.runConcurrently(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        ClassLoader callerClassLoader =
+                                Thread.currentThread().getContextClassLoader();
+                        ClassGeneratorPool pool =
+                                new ClassGeneratorPool(
+                                        ClassLoaderCacheTest.this.classpathElements,
+                                        4, true,
+                                        new ClassLoaderCache.DirectoryState(
+                                                ClassLoaderCacheTest.this.classpathElements),
+                                        new LeaseCheckingFactory());
+
+                        List<String> classNames = new ArrayList<String>();
+                        for (int i = 0; i < 50; i++) {
+                            classNames.add("pa.stub._Stub" + i);
+                        }
+                        try {
+                            for (Future<byte[]> result : pool.submit(classNames)) {
+                                result.get();
+                            }
+                        } finally {
+                            pool.shutdown();
+                        }
+
+                        assertSame(
+                                callerClassLoader,
+                                Thread.currentThread().getContextClassLoader());
+                        return null;
+                    }
+                }, start);
+
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+
+        assertSame(
+                contextClassLoader,
+                Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Creates generators checking that their shared class loader is not used
+     * by another generator, nor released, while they generate.
+     */
+    private class LeaseCheckingFactory implements ClassGeneratorPool.Factory {
+
+        @Override
+        public ClassGenerator createGenerator(final ClassLoader classLoader) {
+            return new ClassGenerator() {
+                @Override
+                public byte[] generateClass(String className) {
+                    assertSame(
+                            classLoader,
+                            Thread.currentThread().getContextClassLoader());
+                    ClassLoaderCacheTest.this.lease(classLoader);
+                    try {
+                        Thread.yield();
+                        return className.getBytes();
+                    } finally {
+                        ClassLoaderCacheTest.this.release(classLoader);
+                    }
+                }
+            };
+        }
+
+    }
+
+    private List<Future<Void>> runConcurrently(Callable<Void> task,
+                                               CountDownLatch start)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(THREADS, futures.size());
+
+        return futures;
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link DependencyIndex}.
+ *
+ * @author lpellegr
+ */
+public class DependencyIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static DependencyIndex createIndex() {
+        Map<String, DependencyIndex.TypeState> typeStates =
+                new HashMap<String, DependencyIndex.TypeState>();
+        typeStates.put("a.A", new DependencyIndex.TypeState("classes", 1, 10, 100));
+        typeStates.put("b.B", new DependencyIndex.TypeState("classes", 2, 20, 200));
+        typeStates.put("c.C", new DependencyIndex.TypeState("lib.jar", 3, 30, 300));
+
+        DependencyIndex index = new DependencyIndex("5.2.0");
+        index.put("pa.stub.a._StubA", Arrays.asList("a.A", "c.C"), typeStates);
+        index.put("pa.stub.b._StubB", Arrays.asList("b.B"), typeStates);
+        // a type missing when the class was recorded has no state
+        index.put("pa.stub.d._StubD", Arrays.asList("d.D"), typeStates);
+
+        return index;
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(this.folder.getRoot(), "stubs.index");
+        createIndex().save(file);
+
+        DependencyIndex index = DependencyIndex.load(file);
+        assertEquals("5.2.0", index.getProActiveVersion());
+        assertEquals(
+                new LinkedHashSet<String>(Arrays.asList(
+                        "pa.stub.a._StubA", "pa.stub.b._StubB",
+                        "pa.stub.d._StubD")), index.getClassNames());
+        assertEquals(
+                Arrays.asList("a.A", "c.C"),
+                index.getDependencies("pa.stub.a._StubA"));
+
+        DependencyIndex.TypeState typeState = index.getTypeState("c.C");
+        assertEquals("lib.jar", typeState.getLocation());
+        assertEquals(3, typeState.getLastModified());
+        assertEquals(30, typeState.getSize());
+        assertEquals(300, typeState.getHash());
+        assertTrue(index.getTypeNames().contains("d.D"));
+        assertNull(index.getTypeState("d.D"));
+    }
+
+    @Test
+    public void testMissingIndexIsEmpty() {
+        DependencyIndex index =
+                DependencyIndex.load(new File(this.folder.getRoot(), "missing"));
+
+        assertNull(index.getProActiveVersion());
+        assertTrue(index.getClassNames().isEmpty());
+    }
+
+    @Test
+    public void testDependents() {
+        DependencyIndex index = createIndex();
+
+        assertEquals(
+                Collections.singleton("pa.stub.a._StubA"),
+                index.getDependents(Collections.singleton("c.C")));
+        assertEquals(
+                new LinkedHashSet<String>(Arrays.asList(
+                        "pa.stub.a._StubA", "pa.stub.b._StubB")),
+                index.getDependents(new LinkedHashSet<String>(Arrays.asList(
+                        "b.B", "a.A"))));
+        assertTrue(index.getDependents(Collections.<String> emptySet())
+                .isEmpty());
+    }
+
+    @Test
+    public void testStaleClassesAreDeleted() throws Exception {
+        DependencyIndex index = createIndex();
+        ClassFileWriter output =
+                new ClassFileWriter(this.folder.getRoot(), false);
+        for (String className : index.getClassNames()) {
+            output.write(className, new byte[] {(byte) 0xCA, (byte) 0xFE});
+        }
+
+        // the source of _StubB disappeared, _StubC is new
+        List<String> classNames =
+                Arrays.asList("pa.stub.a._StubA", "pa.stub.c._StubC",
+                        "pa.stub.d._StubD");
+        Set<String> staleClassNames = index.getStaleClassNames(classNames);
+        assertEquals(Collections.singleton("pa.stub.b._StubB"), staleClassNames);
+
+        for (String className : staleClassNames) {
+            assertEquals(
+                    output.getClassFile(className).toString(),
+                    output.delete(className));
+        }
+        output.close();
+
+        assertFalse(output.contains("pa.stub.b._StubB"));
+        assertTrue(output.contains("pa.stub.a._StubA"));
+        assertTrue(output.contains("pa.stub.d._StubD"));
+        assertNull(output.delete("pa.stub.b._StubB"));
+    }
+
+}
@@ -0,0 +1,176 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link GeneratedClassCache}.
+ *
+ * @author lpellegr
+ */
+public class GeneratedClassCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public interface Service {
+
+        Parameter process(Parameter parameter);
+
+    }
+
+    public static class Parameter {
+    }
+
+    public static class OtherParameter {
+
+        public int value;
+
+    }
+
+    /**
+     * Class loader serving the bytecode of a class in place of another one,
+     * or nothing if the replacement is {@code null}.
+     */
+    private static class ReplacingClassLoader extends ClassLoader {
+
+        private final String resourceName;
+
+        private final String replacementName;
+
+        ReplacingClassLoader(Class<?> replaced, Class<?> replacement) {
+            super(GeneratedClassCacheTest.class.getClassLoader());
+            this.resourceName = ClasspathIndex.toResourceName(replaced.getName());
+            this.replacementName =
+                    replacement == null
+                            ? null : ClasspathIndex.toResourceName(replacement.getName());
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            if (name.equals(this.resourceName)) {
+                return this.replacementName == null
+                        ? null : super.getResourceAsStream(this.replacementName);
+            }
+
+            return super.getResourceAsStream(name);
+        }
+
+    }
+
+    private static String computeKey(ClassLoader classLoader)
+            throws Exception {
+        List<String> dependencies =
+                DependencyIndex.computeDependencies(
+                        classLoader,
+                        Collections.singletonList(Service.class.getName()));
+
+        return GeneratedClassCache.computeKey(
+                classLoader, "stub", "5.2.0", "pa.stub._StubService",
+                dependencies);
+    }
+
+    @Test
+    public void testKeyIsStable() throws Exception {
+        ClassLoader classLoader = GeneratedClassCacheTest.class.getClassLoader();
+
+        assertNotNull(computeKey(classLoader));
+        assertEquals(computeKey(classLoader), computeKey(classLoader));
+    }
+
+    @Test
+    public void testKeyCoversSignatureTypes() throws Exception {
+        String key = computeKey(GeneratedClassCacheTest.class.getClassLoader());
+
+        String changedKey =
+                computeKey(new ReplacingClassLoader(
+                        Parameter.class, OtherParameter.class));
+        assertNotNull(changedKey);
+        assertFalse(key.equals(changedKey));
+
+        String missingKey =
+                computeKey(new ReplacingClassLoader(Parameter.class, null));
+        assertNotNull(missingKey);
+        assertFalse(key.equals(missingKey));
+        assertFalse(changedKey.equals(missingKey));
+    }
+
+    @Test
+    public void testKeyRequiresSourceClasses() throws Exception {
+        assertNull(computeKey(new ReplacingClassLoader(Service.class, null)));
+        assertNull(GeneratedClassCache.computeKey(
+                GeneratedClassCacheTest.class.getClassLoader(), "stub",
+                "5.2.0", "pa.stub._StubService", null));
+    }
+
+    @Test
+    public void testKeyRequiresProActiveVersion() throws Exception {
+        assertNull(GeneratedClassCache.computeKey(
+                GeneratedClassCacheTest.class.getClassLoader(), "stub", null,
+                "pa.stub._StubService",
+                Collections.singletonList(Service.class.getName())));
+    }
+
+    @Test
+    public void testGetAndPut() throws Exception {
+        GeneratedClassCache cache =
+                new GeneratedClassCache(this.folder.getRoot(), 1024);
+        String key = computeKey(GeneratedClassCacheTest.class.getClassLoader());
+
+        assertNull(cache.get(key));
+        cache.put(key, new byte[] {1, 2, 3});
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get(key));
+    }
+
+    @Test
+    public void testEvictionDeletesLeftoverTemporaryFiles() throws Exception {
+        GeneratedClassCache cache =
+                new GeneratedClassCache(this.folder.getRoot(), 1024);
+        String key = computeKey(GeneratedClassCacheTest.class.getClassLoader());
+        cache.put(key, new byte[] {1, 2, 3});
+
+        File subDirectory = new File(this.folder.getRoot(), key.substring(0, 2));
+        File leftover = new File(subDirectory, key.substring(2) + ".class1.tmp");
+        File running = new File(subDirectory, key.substring(2) + ".class2.tmp");
+        assertTrue(leftover.createNewFile());
+        assertTrue(running.createNewFile());
+        assertTrue(leftover.setLastModified(
+                System.currentTimeMillis() - 2 * 60 * 60 * 1000L));
+
+        cache.evict();
+
+        assertFalse(leftover.exists());
+        assertTrue(running.exists());
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get(key));
+    }
+
+}
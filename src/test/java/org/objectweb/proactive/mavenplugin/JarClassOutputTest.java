@@ -0,0 +1,169 @@
+/**
+ * This file is part of proactive-maven-plugin.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ **/
+package org.objectweb.proactive.mavenplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link JarClassOutput}.
+ *
+ * @author lpellegr
+ */
+public class JarClassOutputTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameClassesProduceSameJar() throws Exception {
+        File first = new File(this.folder.getRoot(), "first.jar");
+        JarClassOutput output = new JarClassOutput(first);
+        output.submit("pa.stub.b._StubB", bytes(2));
+        output.submit("pa.stub.a._StubA", bytes(1));
+        output.close();
+
+        File second = new File(this.folder.getRoot(), "second.jar");
+        output = new JarClassOutput(second);
+        output.submit("pa.stub.a._StubA", bytes(1));
+        output.submit("pa.stub.b._StubB", bytes(2));
+        output.close();
+
+        assertArrayEquals(
+                Files.readAllBytes(first.toPath()),
+                Files.readAllBytes(second.toPath()));
+        assertFalse(new File(first.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testEntriesAreSortedWithFixedTime() throws Exception {
+        File jarFile = new File(this.folder.getRoot(), "classes.jar");
+        JarClassOutput output = new JarClassOutput(jarFile);
+        output.submit("pa.stub.b._StubB", bytes(2));
+        output.submit("pa.stub.a._StubA", bytes(1));
+        output.close();
+
+        List<String> names = new ArrayList<String>();
+        ZipFile zipFile = new ZipFile(jarFile);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                names.add(entry.getName());
+
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTimeInMillis(entry.getTime());
+                assertEquals(1980, calendar.get(Calendar.YEAR));
+                assertEquals(Calendar.JANUARY, calendar.get(Calendar.MONTH));
+                assertEquals(1, calendar.get(Calendar.DAY_OF_MONTH));
+            }
+        } finally {
+            zipFile.close();
+        }
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("META-INF/");
+        expected.add("META-INF/MANIFEST.MF");
+        expected.add("pa/");
+        expected.add("pa/stub/");
+        expected.add("pa/stub/a/");
+        expected.add("pa/stub/a/_StubA.class");
+        expected.add("pa/stub/b/");
+        expected.add("pa/stub/b/_StubB.class");
+        assertEquals(expected, names);
+    }
+
+    @Test
+    public void testPreviousEntriesAreKept() throws Exception {
+        File jarFile = new File(this.folder.getRoot(), "classes.jar");
+        JarClassOutput output = new JarClassOutput(jarFile);
+        output.submit("pa.stub.a._StubA", bytes(1));
+        output.submit("pa.stub.b._StubB", bytes(2));
+        output.close();
+
+        output = new JarClassOutput(jarFile);
+        assertTrue(output.contains("pa.stub.a._StubA"));
+        assertTrue(output.submit("pa.stub.c._StubC", bytes(3)).get().isWritten());
+        assertEquals(
+                jarFile + "!/pa/stub/b/_StubB.class",
+                output.delete("pa.stub.b._StubB"));
+        output.close();
+
+        assertArrayEquals(bytes(1), read(jarFile, "pa/stub/a/_StubA.class"));
+        assertArrayEquals(bytes(3), read(jarFile, "pa/stub/c/_StubC.class"));
+        assertEquals(null, read(jarFile, "pa/stub/b/_StubB.class"));
+    }
+
+    @Test
+    public void testUnchangedJarIsNotRewritten() throws Exception {
+        File jarFile = new File(this.folder.getRoot(), "classes.jar");
+        JarClassOutput output = new JarClassOutput(jarFile);
+        output.submit("pa.stub.a._StubA", bytes(1));
+        output.close();
+        assertTrue(jarFile.setLastModified(1000000000L));
+
+        output = new JarClassOutput(jarFile);
+        assertFalse(output.submit("pa.stub.a._StubA", bytes(1)).get().isWritten());
+        output.close();
+
+        output = new JarClassOutput(jarFile);
+        assertFalse(output.submit("pa.stub.a._StubA", bytes(1)).get().isWritten());
+        output.close();
+        assertEquals(1000000000L, jarFile.lastModified());
+    }
+
+    private static byte[] bytes(int value) {
+        return new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) value};
+    }
+
+    private static byte[] read(File jarFile, String entryName)
+            throws Exception {
+        ZipFile zipFile = new ZipFile(jarFile);
+        try {
+            ZipEntry entry = zipFile.getEntry(entryName);
+            if (entry == null) {
+                return null;
+            }
+
+            InputStream in = zipFile.getInputStream(entry);
+            try {
+                return Util.readFully(in);
+            } finally {
+                in.close();
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+}